@@ -0,0 +1,126 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Synthetic trees for the benchmarks, generated from a fixed seed so every run sees the same files.
+ * <p>
+ * Every file and directory name and every line either contains the search term or not, in the given match ratio.
+ * A tenth of the files have the .bin extension and a tenth of the directories are named skip-*, for the mask and
+ * exclusion benchmarks.
+ */
+enum BenchmarkTree {
+
+  /**
+   * 5000 files of 1 KB, spread over 50 directories.
+   */
+  MANY_SMALL_FILES("many-small-files", 50, 1, 100, 1024),
+
+  /**
+   * 4 files of 16 MB in a single directory.
+   */
+  FEW_HUGE_FILES("few-huge-files", 1, 1, 4, 16 * 1024 * 1024),
+
+  /**
+   * 100 nested directories holding 10 files of 4 KB each.
+   */
+  DEEP_NESTING("deep-nesting", 1, 100, 10, 4 * 1024);
+
+  static final String TERM = "foo";
+
+  static final String OTHER_TERM = "bar";
+
+  private static final int LINE_LENGTH = 64;
+
+  private final String value;
+
+  private final int directories;
+
+  private final int depth;
+
+  private final int filesPerDirectory;
+
+  private final int fileSize;
+
+  BenchmarkTree(String value, int directories, int depth, int filesPerDirectory, int fileSize) {
+    this.value = value;
+    this.directories = directories;
+    this.depth = depth;
+    this.filesPerDirectory = filesPerDirectory;
+    this.fileSize = fileSize;
+  }
+
+  /**
+   * @param value the benchmark parameter value
+   * @return the matching tree
+   */
+  static BenchmarkTree fromValue(String value) {
+    for (BenchmarkTree tree : values()) {
+      if (tree.value.equals(value)) {
+        return tree;
+      }
+    }
+    throw new IllegalArgumentException("Unknown tree: " + value);
+  }
+
+  /**
+   * @param baseDir    the empty directory to generate the tree in
+   * @param matchRatio the share of names and lines containing the search term, between 0 and 1
+   */
+  void generate(Path baseDir, double matchRatio) throws IOException {
+
+    Random random = new Random(42);
+
+    for (int d = 0; d < directories; d++) {
+      Path dir = baseDir;
+      for (int level = 0; level < depth; level++) {
+        String prefix = random.nextInt(10) == 0 && level == 0 ? "skip-" : "dir-";
+        dir = Files.createDirectories(dir.resolve(prefix + term(random, matchRatio) + "-" + d + "-" + level));
+        for (int f = 0; f < filesPerDirectory; f++) {
+          String extension = random.nextInt(10) == 0 ? ".bin" : ".txt";
+          writeFile(dir.resolve("file-" + term(random, matchRatio) + "-" + f + extension), random, matchRatio);
+        }
+      }
+    }
+
+  }
+
+  private void writeFile(Path file, Random random, double matchRatio) throws IOException {
+
+    char[] filler = new char[LINE_LENGTH];
+    try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      for (int written = 0; written < fileSize; written += LINE_LENGTH + 1) {
+        // g to n, so the filler never contains either term
+        for (int i = 0; i < filler.length; i++) {
+          filler[i] = (char) ('g' + random.nextInt(8));
+        }
+        filler[LINE_LENGTH / 2] = ' ';
+        String term = term(random, matchRatio);
+        System.arraycopy(term.toCharArray(), 0, filler, LINE_LENGTH / 2 + 1, term.length());
+        filler[LINE_LENGTH / 2 + 1 + term.length()] = ' ';
+        writer.write(filler);
+        writer.write('\n');
+      }
+    }
+
+  }
+
+  private static String term(Random random, double matchRatio) {
+    return random.nextDouble() < matchRatio ? TERM : OTHER_TERM;
+  }
+
+  static void delete(Path baseDir) throws IOException {
+    try (Stream<Path> paths = Files.walk(baseDir)) {
+      paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+  }
+
+}
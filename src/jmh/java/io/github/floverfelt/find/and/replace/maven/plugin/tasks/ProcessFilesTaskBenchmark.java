@@ -0,0 +1,173 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Benchmarks the hot paths of ProcessFilesTask.process over synthetic trees: the file-contents rewrite,
+ * the filename and directory name rename, and the walk with file mask and exclusion or include and exclude glob
+ * filtering alone.
+ * <p>
+ * Run with: mvn -P benchmark verify
+ * <p>
+ * Arguments are passed to JMH with -Djmh.args, for instance -Djmh.args="-p matchScope=file,streaming-window".
+ * A pipelineQueueSize above 0 runs file contents through the read, match and write pipeline.
+ * <p>
+ * The bytes allocated per invocation are reported by the GC profiler, -Djmh.args="fileContents -prof gc". The line
+ * loop recycles its matchers and buffers: replacing 20000 more lines of one match each allocated 0.14 byte per line
+ * with the buffered contentsReader, and 34 bytes per line of 17 chars with nio, the buffer the file is decoded into,
+ * see FindAndReplaceMojoTest.testLineLoopAllocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProcessFilesTaskBenchmark {
+
+  private static final QuietLog LOG = new QuietLog();
+
+  private static final PathFilter NO_FILTER = PathFilter.compile(Collections.emptyList(), Collections.emptyList(),
+      Collections.emptyList());
+
+  private static final PathFilter INCLUDES_AND_EXCLUDES = PathFilter.compile(Collections.emptyList(),
+      Arrays.asList("**/*.txt", "**/*.xml"), Collections.singletonList("**/skip-*/"));
+
+  @Param({"many-small-files", "few-huge-files", "deep-nesting"})
+  private String tree;
+
+  @Param({"0", "0.01", "1"})
+  private double matchRatio;
+
+  @Param({"false", "true"})
+  private boolean literal;
+
+  @Param({"line"})
+  private String matchScope;
+
+  @Param({"1"})
+  private int threads;
+
+  @Param({"0"})
+  private int pipelineQueueSize;
+
+  @Param({"platform"})
+  private String executor;
+
+  private Path baseDir;
+
+  private List<ReplacementRule> contentsRules;
+
+  private List<ReplacementRule> renameRules;
+
+  private List<ReplacementRule> renameBackRules;
+
+  private boolean renamed;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+
+    baseDir = Files.createTempDirectory("find-and-replace-benchmark");
+    BenchmarkTree.fromValue(tree).generate(baseDir, matchRatio);
+
+    // Replaced with itself, so every invocation rewrites the same tree
+    contentsRules = rules(BenchmarkTree.TERM, BenchmarkTree.TERM);
+    renameRules = rules(BenchmarkTree.TERM, "baz");
+    renameBackRules = rules("baz", BenchmarkTree.TERM);
+
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    BenchmarkTree.delete(baseDir);
+  }
+
+  @Benchmark
+  public void fileContents() throws IOException {
+    process(contentsRules, NO_FILTER, Collections.emptyList(), true, false, false);
+  }
+
+  @Benchmark
+  public void filenamesAndDirectoryNames() throws IOException {
+    // Renames back and forth, so every invocation renames the same share of the tree
+    process(renamed ? renameBackRules : renameRules, NO_FILTER, Collections.emptyList(), false, true,
+        true);
+    renamed = !renamed;
+  }
+
+  @Benchmark
+  public void masksAndExclusions() throws IOException {
+    process(renameRules, PathFilter.compile(Arrays.asList(".txt", ".xml"), Collections.emptyList(),
+        Collections.emptyList()), Collections.singletonList(Pattern.compile("^skip-")), false, false, false);
+  }
+
+  @Benchmark
+  public void includesAndExcludes() throws IOException {
+    process(renameRules, INCLUDES_AND_EXCLUDES, Collections.emptyList(), false, false, false);
+  }
+
+  private void process(List<ReplacementRule> rules, PathFilter pathFilter, List<Pattern> exclusions,
+                       boolean processFileContents, boolean processFilenames, boolean processDirectoryNames)
+      throws IOException {
+    ProcessFilesTask.process(LOG, ProcessOptions.builder(baseDir, rules)
+        .recursive(true)
+        .literal(literal)
+        .pathFilter(pathFilter)
+        .exclusions(exclusions)
+        .processFileContents(processFileContents)
+        .processFilenames(processFilenames)
+        .processDirectoryNames(processDirectoryNames)
+        .charset(StandardCharsets.UTF_8)
+        .executorType(ExecutorType.fromValue(executor))
+        .threads(threads)
+        .pipelineQueueSize(pipelineQueueSize)
+        .matchScope(MatchScope.fromValue(matchScope))
+        .build(), new ProcessMetrics());
+  }
+
+  private List<ReplacementRule> rules(String find, String replace) {
+    Pattern findRegex = literal ? Pattern.compile(find, Pattern.LITERAL) : Pattern.compile(find);
+    return Collections.singletonList(new ReplacementRule(findRegex, replace, true, Collections.emptyList()));
+  }
+
+  /**
+   * Drops the rename logging, which would otherwise dominate the rename benchmark.
+   */
+  private static final class QuietLog extends SystemStreamLog {
+
+    @Override
+    public boolean isInfoEnabled() {
+      return false;
+    }
+
+    @Override
+    public void info(CharSequence content) {
+      // dropped
+    }
+
+  }
+
+}
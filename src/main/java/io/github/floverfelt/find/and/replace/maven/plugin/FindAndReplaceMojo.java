@@ -1,7 +1,20 @@
 package io.github.floverfelt.find.and.replace.maven.plugin;
 
+import io.github.floverfelt.find.and.replace.maven.plugin.tasks.BinaryHandling;
+import io.github.floverfelt.find.and.replace.maven.plugin.tasks.ChangedPaths;
+import io.github.floverfelt.find.and.replace.maven.plugin.tasks.ContentsReader;
+import io.github.floverfelt.find.and.replace.maven.plugin.tasks.DryRunReport;
+import io.github.floverfelt.find.and.replace.maven.plugin.tasks.ExecutorType;
+import io.github.floverfelt.find.and.replace.maven.plugin.tasks.FingerprintIndex;
+import io.github.floverfelt.find.and.replace.maven.plugin.tasks.MatchScope;
+import io.github.floverfelt.find.and.replace.maven.plugin.tasks.PathFilter;
+import io.github.floverfelt.find.and.replace.maven.plugin.tasks.PatternCache;
 import io.github.floverfelt.find.and.replace.maven.plugin.tasks.ProcessFilesTask;
+import io.github.floverfelt.find.and.replace.maven.plugin.tasks.ProcessMetrics;
+import io.github.floverfelt.find.and.replace.maven.plugin.tasks.ProcessOptions;
+import io.github.floverfelt.find.and.replace.maven.plugin.tasks.ReplacementRule;
 import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
@@ -9,12 +22,16 @@ import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 
+import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 /**
@@ -61,14 +78,20 @@ public class FindAndReplaceMojo extends AbstractMojo {
 
   /**
    * The regex string to find.
+   * Required unless replacements are given.
    *
    * @parameter findRegex
    */
-  @Parameter(property = "findRegex", required = true)
+  @Parameter(property = "findRegex")
   private String findRegex;
 
   /**
    * The value to replace the matching findRegex with.
+   * <p>
+   * $1 and ${name} refer to a group of the findRegex, as for Matcher.replaceAll, and ${1} by number as well.
+   * A group may be transformed with ${1:upper}, ${1:lower} or ${1:capitalize},
+   * which changes its first char to title case.
+   * The value is compiled once, and a reference to a missing group fails the execution up front.
    *
    * @parameter replaceValue
    */
@@ -92,12 +115,34 @@ public class FindAndReplaceMojo extends AbstractMojo {
 
   /**
    * Regex filenames/directory-names to exclude.
+   * Excluded directories are not descended into.
    *
    * @parameter exclusions
    */
   @Parameter(property = "exclusions")
   private String exclusions;
 
+  /**
+   * Ant style globs of the files to process, matched against paths relative to baseDir, e.g. src/**&#47;*.java.
+   * ** matches any number of directories, * any chars but / and ? a single char but /.
+   * All files are included by default.
+   * <p>
+   * Combined with fileMask and exclusions, a file must pass all of them. Ignored for directories.
+   *
+   * @parameter includes
+   */
+  @Parameter(property = "includes")
+  private List<String> includes;
+
+  /**
+   * Ant style globs of the files to leave untouched, matched against paths relative to baseDir.
+   * A directory matched by a glob ending with /** or / (e.g. **&#47;node_modules/) is not descended into.
+   *
+   * @parameter excludes
+   */
+  @Parameter(property = "excludes")
+  private List<String> excludes;
+
   /**
    * Skip execution of the plugin.
    *
@@ -125,6 +170,237 @@ public class FindAndReplaceMojo extends AbstractMojo {
   @Parameter(property = "replaceAll", defaultValue = "true")
   private boolean replaceAll;
 
+  /**
+   * Additional find and replace rules, applied in order after findRegex during a single pass over the files.
+   * Every file is read and written once, whatever the number of rules.
+   * <p>
+   * Each replacement takes a findRegex, a replaceValue, and optionally replaceAll (defaults to the plugin's
+   * replaceAll) and a fileMask CSV limiting the rule to matching files.
+   *
+   * @parameter replacements
+   */
+  @Parameter
+  private List<Replacement> replacements;
+
+  /**
+   * Whether findRegex and the findRegex of every replacement are plain literals instead of regexes.
+   * <p>
+   * All literals are compiled into a single Aho-Corasick automaton and found in one scan, however many there are.
+   * They are all matched against the original contents, so a replaced value is never matched again by a later rule.
+   * The replaceValues are literal too, $ has no special meaning.
+   * <p>
+   * With the nio contentsReader and a UTF-8, ISO-8859-1 or US-ASCII encoding, file contents are matched as raw
+   * bytes and never decoded.
+   *
+   * @parameter literal
+   */
+  @Parameter(property = "literal", defaultValue = "false")
+  private boolean literal;
+
+  /**
+   * The number of threads used to process file contents.
+   * Values ending with C are multiplied by the number of available cores, e.g. 1C or 0.5C.
+   * <p>
+   * Directory and file renames always run on a single thread.
+   *
+   * @parameter threads
+   */
+  @Parameter(property = "threads", defaultValue = "1")
+  private String threads;
+
+  /**
+   * What file contents are processed on. Valid values are: sequential platform virtual
+   * <p>
+   * sequential processes everything on the build thread, whatever the number of threads.
+   * platform processes file contents on a pool of as many platform threads as threads.
+   * virtual processes the contents of every file on its own virtual thread, with up to 256 files per thread in
+   * flight, so many blocking reads can wait at once on a slow file system. Virtual threads need Java 21 or later,
+   * older Java versions fall back to platform.
+   *
+   * @parameter executor
+   */
+  @Parameter(property = "executor", defaultValue = "platform")
+  private String executor;
+
+  /**
+   * Whether file contents are processed as a pipeline: readers prefetch the files, matchers replace them in memory
+   * and a single writer writes them back, each stage on its own threads. Reads and writes then overlap with the
+   * matching, which pays off on file systems with a high latency such as network mounts.
+   * <p>
+   * As many readers and matchers as threads are started. Files larger than 1 MB are read and written by the
+   * matchers themselves.
+   *
+   * @parameter pipeline
+   */
+  @Parameter(property = "pipeline", defaultValue = "false")
+  private boolean pipeline;
+
+  /**
+   * The capacity of the queue in front of each pipeline stage. A stage finding the next queue full waits for room,
+   * which bounds the memory held by prefetched files. The peak depth of each queue is reported in the metrics.
+   *
+   * @parameter pipelineQueueSize
+   */
+  @Parameter(property = "pipelineQueueSize", defaultValue = "16")
+  private int pipelineQueueSize = 16;
+
+  /**
+   * Whether files are scanned for the findRegex before file-contents replacement.
+   * Files without a match are left untouched, keeping their content and modification time.
+   *
+   * @parameter skipUnmatchedFiles
+   */
+  @Parameter(property = "skipUnmatchedFiles", defaultValue = "false")
+  private boolean skipUnmatchedFiles;
+
+  /**
+   * How file contents are read during file-contents replacement. Valid values are: nio buffered
+   * <p>
+   * nio reads the file through a FileChannel into reused buffers and matches directly against the decoded content.
+   * buffered reads the file line by line through a BufferedReader.
+   * <p>
+   * With the line match scope, buffered and files that do not fit in maxInMemorySize read through a window of fixed
+   * size, so memory stays capped whatever the size of the file and of its lines.
+   *
+   * @parameter contentsReader
+   */
+  @Parameter(property = "contentsReader", defaultValue = "nio")
+  private String contentsReader;
+
+  /**
+   * What the findRegex is matched against during file-contents replacement. Valid values are: line file streaming-window
+   * <p>
+   * line matches each line on its own and writes every line terminated by \n.
+   * file matches against the whole file, so matches may span lines. The file is held in memory, files larger than
+   * maxInMemorySize are matched through the streaming window instead.
+   * streaming-window matches through a sliding window of twice maxMatchLength, so matches may span lines while
+   * memory stays capped for large files.
+   * <p>
+   * file and streaming-window leave line terminators untouched. Use inline flags such as (?s) or (?m) in the
+   * findRegex to control how . ^ and $ treat line breaks.
+   *
+   * @parameter matchScope
+   */
+  @Parameter(property = "matchScope", defaultValue = "line")
+  private String matchScope;
+
+  /**
+   * The longest match, in chars, guaranteed to be found with the streaming-window match scope, and within lines
+   * longer than the read window (the larger of 64K chars and twice this length) with the line match scope.
+   *
+   * @parameter maxMatchLength
+   */
+  @Parameter(property = "maxMatchLength", defaultValue = "65536")
+  private int maxMatchLength = 65536;
+
+  /**
+   * The total size in bytes of the files all threads may hold whole in memory at once, 64 MB by default. The
+   * decoded contents of a file take about twice its size on the heap.
+   * <p>
+   * The file match scope, and the line match scope with the nio contentsReader, read a file whole while it fits in
+   * what other threads left of this budget. With the file match scope a thread otherwise waits for room, with the
+   * line match scope it reads the file through a window of fixed size instead. Files larger than the whole budget
+   * are always read through a window.
+   *
+   * @parameter maxInMemorySize
+   */
+  @Parameter(property = "maxInMemorySize", defaultValue = "67108864")
+  private long maxInMemorySize = 64L * 1024 * 1024;
+
+  /**
+   * Whether the line match scope keeps each line's original terminator (\n, \r\n or \r) and the presence or
+   * absence of a final newline. By default every line is written terminated by \n.
+   * <p>
+   * Combine with skipUnmatchedFiles so files without a match are not rewritten at all.
+   *
+   * @parameter preserveLineEndings
+   */
+  @Parameter(property = "preserveLineEndings", defaultValue = "false")
+  private boolean preserveLineEndings;
+
+  /**
+   * What file-contents replacement does with binary files. Valid values are: skip fail byte-level-replace
+   * <p>
+   * A file is binary when its first 8 KB hold a NUL byte, or a sequence the encoding cannot decode.
+   * skip leaves binary files untouched, listing them in the debug log and their count at info. A file holding no NUL
+   * byte but a sequence the encoding cannot decode is more likely text in another encoding, it is skipped with a
+   * warning naming it rather than rewritten with the sequence replaced by U+FFFD.
+   * fail fails the execution on the first binary file.
+   * byte-level-replace matches the findRegex against the raw bytes, each read as one char, and writes every other
+   * byte back unchanged. The findRegex and replaceValue are encoded with the encoding first, so their non-ASCII
+   * chars match and produce the same bytes as in a text file.
+   *
+   * @parameter binaryHandling
+   */
+  @Parameter(property = "binaryHandling", defaultValue = "skip")
+  private String binaryHandling;
+
+  /**
+   * Whether file-contents replacement skips files left unchanged since the previous execution.
+   * <p>
+   * The size, modification time and content hash of every processed file are stored in an index under the build
+   * directory, together with a hash of the options. Files matching their entry are not read again.
+   * The index is discarded whenever the options change.
+   *
+   * @parameter incremental
+   */
+  @Parameter(property = "incremental", defaultValue = "false")
+  private boolean incremental;
+
+  /**
+   * A git ref, such as origin/main or HEAD~1, to only process the files that differ from: files changed in the
+   * index or the working tree since the ref, and untracked files git does not ignore. Directories are only walked
+   * and renamed when they hold such files.
+   * <p>
+   * The changes are read from the local repository with the git executable, nothing is fetched. When baseDir is
+   * not in a git repository, or git is not available, every file is processed.
+   *
+   * @parameter changedSince
+   */
+  @Parameter(property = "changedSince")
+  private String changedSince;
+
+  /**
+   * Whether to skip the paths git ignores: those matching the .gitignore files of baseDir, its subdirectories and
+   * its parent directories up to the repository root, and the repository's .git/info/exclude file. .ignore files are
+   * read as well and take precedence over .gitignore files. Ignored directories are not walked at all, and .git
+   * directories are always skipped.
+   *
+   * @parameter respectIgnoreFiles
+   */
+  @Parameter(property = "respectIgnoreFiles", defaultValue = "false")
+  private boolean respectIgnoreFiles;
+
+  /**
+   * Whether to only count the matches instead of replacing them. Nothing is written or renamed, incremental is
+   * ignored, and the scan runs on at least one thread per available processor.
+   * <p>
+   * The matches per file and per rule are written as JSON to
+   * target/find-and-replace/&lt;execution id&gt;-dry-run.json. The rules are matched in sequence as a real run
+   * applies them, each against the contents and names as replaced by the previous rules, so the counts are those a
+   * real run would replace.
+   *
+   * @parameter dryRun
+   */
+  @Parameter(property = "dryRun", defaultValue = "false")
+  private boolean dryRun;
+
+  /**
+   * A file the execution's metrics are written to, relative to baseDir unless absolute. A summary is logged
+   * either way.
+   * <p>
+   * The metrics are files and directories visited, excluded and filtered, bytes read and written, matches,
+   * renames, and the time spent walking, processing contents and renaming. A file ending with .csv gets one row
+   * appended per execution, any other file is overwritten with JSON.
+   *
+   * @parameter metricsFile
+   */
+  @Parameter(property = "metricsFile")
+  private String metricsFile;
+
+  @Parameter(defaultValue = "${mojoExecution}", readonly = true)
+  private MojoExecution mojoExecution;
+
   private Charset charset = Charset.defaultCharset();
 
   private static final String FILE_CONTENTS = "file-contents";
@@ -133,6 +409,28 @@ public class FindAndReplaceMojo extends AbstractMojo {
 
   private Path baseDirPath;
 
+  private int threadCount = 1;
+
+  private ExecutorType executorType = ExecutorType.PLATFORM;
+
+  private ContentsReader contentsReaderType = ContentsReader.NIO;
+
+  private MatchScope matchScopeType = MatchScope.LINE;
+
+  private BinaryHandling binaryHandlingType = BinaryHandling.SKIP;
+
+  private FingerprintIndex fingerprintIndex;
+
+  private ChangedPaths changedPaths;
+
+  private DryRunReport dryRunReport;
+
+  private Path dryRunReportFile;
+
+  private Path metricsFilePath;
+
+  private Set<Path> outputPaths = new HashSet<>();
+
   private List<String> validReplacementTypes = Arrays.asList(FILE_CONTENTS, FILENAMES, DIRECTORY_NAMES);
   private boolean processFileContents = false;
   private boolean processFilenames = false;
@@ -140,6 +438,8 @@ public class FindAndReplaceMojo extends AbstractMojo {
 
   private List<String> fileMaskList = new ArrayList<>();
   private List<Pattern> exclusionsList = new ArrayList<>();
+  private PathFilter pathFilter;
+  private List<ReplacementRule> rules = new ArrayList<>();
 
   public void execute() throws MojoExecutionException, MojoFailureException {
 
@@ -152,27 +452,93 @@ public class FindAndReplaceMojo extends AbstractMojo {
 
     getLog().info("Executing find-and-replace maven plugin with options: " + this.toString());
 
+    ProcessMetrics metrics = new ProcessMetrics();
+
     try {
-      ProcessFilesTask.process(getLog(), baseDirPath, recursive, Pattern.compile(findRegex), replaceValue, fileMaskList,
-          exclusionsList, processFileContents, processFilenames, processDirectoryNames, replaceAll, charset);
+      ProcessFilesTask.process(getLog(), buildProcessOptions(), metrics);
+      if (fingerprintIndex != null) {
+        fingerprintIndex.save();
+      }
+      if (dryRunReport != null) {
+        dryRunReport.write(dryRunReportFile);
+        getLog().info(String.format("Dry run found %d match(es) in %d of %d scanned file(s), report written to %s",
+            dryRunReport.getMatchCount(), dryRunReport.getMatchedCount(), dryRunReport.getScannedCount(),
+            dryRunReportFile));
+      }
+      getLog().info("Find and replace metrics: " + metrics);
+      if (metricsFilePath != null) {
+        metrics.write(metricsFilePath);
+      }
     } catch (Exception e) {
       throw new MojoFailureException("Unable to process files.", e);
     }
 
   }
 
+  private ProcessOptions buildProcessOptions() {
+    return ProcessOptions.builder(baseDirPath, rules)
+        .recursive(recursive)
+        .literal(literal)
+        .pathFilter(pathFilter)
+        .exclusions(exclusionsList)
+        .processFileContents(processFileContents)
+        .processFilenames(processFilenames)
+        .processDirectoryNames(processDirectoryNames)
+        .charset(charset)
+        .executorType(executorType)
+        .threads(threadCount)
+        .pipelineQueueSize(pipeline ? pipelineQueueSize : 0)
+        .skipUnmatchedFiles(skipUnmatchedFiles)
+        .contentsReader(contentsReaderType)
+        .matchScope(matchScopeType)
+        .maxMatchLength(maxMatchLength)
+        .maxInMemorySize(maxInMemorySize)
+        .preserveLineEndings(preserveLineEndings)
+        .binaryHandling(binaryHandlingType)
+        .fingerprintIndex(fingerprintIndex)
+        .changedPaths(changedPaths)
+        .respectIgnoreFiles(respectIgnoreFiles)
+        .outputPaths(outputPaths)
+        .dryRunReport(dryRunReport)
+        .build();
+  }
+
   private void setup() throws MojoExecutionException {
 
     setupReplacementTypes();
 
+    setupReplacements();
+
     setupFileMasks();
 
     setupExclusions();
 
+    setupPathFilter();
+
     setupBaseDir();
 
     setupEncoding();
 
+    setupThreads();
+
+    setupExecutor();
+
+    setupPipeline();
+
+    setupContentsReader();
+
+    setupMatchScope();
+
+    setupBinaryHandling();
+
+    setupDryRun();
+
+    setupMetricsFile();
+
+    setupIncremental();
+
+    setupChangedSince();
+
   }
 
   private void setupReplacementTypes() throws MojoExecutionException {
@@ -209,6 +575,46 @@ public class FindAndReplaceMojo extends AbstractMojo {
 
   }
 
+  private void setupReplacements() throws MojoExecutionException {
+    if (findRegex != null && !findRegex.isEmpty()) {
+      rules.add(newReplacementRule(compileFindRegex(findRegex), replaceValue == null ? "" : replaceValue, replaceAll,
+          Collections.emptyList()));
+    }
+
+    if (replacements != null) {
+      for (Replacement replacement : replacements) {
+        if (replacement.getFindRegex() == null || replacement.getFindRegex().isEmpty()) {
+          throw new MojoExecutionException("findRegex cannot be null or empty in replacement: " + replacement);
+        }
+        List<String> ruleFileMasks = replacement.getFileMask() == null || replacement.getFileMask().isEmpty()
+            ? Collections.emptyList() : Arrays.asList(replacement.getFileMask().split(","));
+        rules.add(newReplacementRule(compileFindRegex(replacement.getFindRegex()),
+            replacement.getReplaceValue() == null ? "" : replacement.getReplaceValue(),
+            replacement.getReplaceAll() == null ? replaceAll : replacement.getReplaceAll(), ruleFileMasks));
+      }
+    }
+
+    if (rules.isEmpty()) {
+      throw new MojoExecutionException("findRegex or replacements must be specified.");
+    }
+
+    getLog().info("Replacement rules set to: " + rules);
+
+  }
+
+  private ReplacementRule newReplacementRule(Pattern regex, String value, boolean all, List<String> ruleFileMasks)
+      throws MojoExecutionException {
+    try {
+      return new ReplacementRule(regex, value, all, ruleFileMasks);
+    } catch (IllegalArgumentException e) {
+      throw new MojoExecutionException("Invalid replaceValue specified: " + value + " (" + e.getMessage() + ")", e);
+    }
+  }
+
+  private Pattern compileFindRegex(String regex) {
+    return PatternCache.compile(regex, literal ? Pattern.LITERAL : 0);
+  }
+
   private void setupFileMasks() {
     if (fileMask != null && !fileMask.isEmpty()) {
       fileMaskList = Arrays.asList(fileMask.split(","));
@@ -233,9 +639,234 @@ public class FindAndReplaceMojo extends AbstractMojo {
   private void setupExclusions() {
     if (exclusions != null && !exclusions.isEmpty()) {
       getLog().info("Compiling regex for exclusions: " + exclusions);
-      exclusionsList.add(Pattern.compile(exclusions));
+      exclusionsList.add(PatternCache.compile(exclusions));
+    }
+
+  }
+
+  private void setupPathFilter() {
+    List<String> includesList = includes == null ? Collections.emptyList() : includes;
+    List<String> excludesList = excludes == null ? Collections.emptyList() : excludes;
+    pathFilter = PathFilter.compile(fileMaskList, includesList, excludesList);
+
+    if (!includesList.isEmpty()) {
+      getLog().info("includes set to: " + includesList);
+    }
+    if (!excludesList.isEmpty()) {
+      getLog().info("excludes set to: " + excludesList);
+    }
+
+  }
+
+  private void setupThreads() throws MojoExecutionException {
+    if (threads == null || threads.isEmpty()) {
+      return;
+    }
+
+    try {
+      if (threads.endsWith("C")) {
+        float perCore = Float.parseFloat(threads.substring(0, threads.length() - 1));
+        threadCount = Math.max(1, (int) (perCore * Runtime.getRuntime().availableProcessors()));
+      } else {
+        threadCount = Integer.parseInt(threads);
+      }
+    } catch (NumberFormatException e) {
+      throw new MojoExecutionException("Invalid threads value specified: " + threads, e);
+    }
+
+    if (threadCount < 1) {
+      throw new MojoExecutionException("threads must be at least 1: " + threads);
+    }
+
+    getLog().info("threads set to: " + threadCount);
+
+  }
+
+  private void setupExecutor() throws MojoExecutionException {
+    if (executor == null || executor.isEmpty()) {
+      return;
+    }
+
+    executorType = ExecutorType.fromValue(executor);
+    if (executorType == null) {
+      throw new MojoExecutionException("Invalid executor specified: " + executor);
+    }
+
+    if (!executorType.isAvailable()) {
+      getLog().warn("Virtual threads need Java 21 or later, falling back to platform threads.");
+      executorType = ExecutorType.PLATFORM;
+    }
+
+    getLog().info("executor set to: " + executorType.getValue());
+
+  }
+
+  private void setupPipeline() throws MojoExecutionException {
+    if (!pipeline) {
+      return;
+    }
+
+    if (executorType == ExecutorType.SEQUENTIAL) {
+      getLog().warn("pipeline is ignored with the sequential executor.");
+      return;
+    }
+
+    if (pipelineQueueSize < 1) {
+      throw new MojoExecutionException("pipelineQueueSize must be at least 1: " + pipelineQueueSize);
+    }
+
+    getLog().info("pipeline set to: " + threadCount + " reader(s), " + threadCount + " matcher(s) and 1 writer, "
+        + "queue size " + pipelineQueueSize);
+
+  }
+
+  private void setupContentsReader() throws MojoExecutionException {
+    if (contentsReader == null || contentsReader.isEmpty()) {
+      return;
+    }
+
+    contentsReaderType = ContentsReader.fromValue(contentsReader);
+    if (contentsReaderType == null) {
+      throw new MojoExecutionException("Invalid contentsReader specified: " + contentsReader);
+    }
+
+    getLog().info("contentsReader set to: " + contentsReaderType.getValue());
+
+  }
+
+  private void setupMatchScope() throws MojoExecutionException {
+    if (matchScope != null && !matchScope.isEmpty()) {
+      matchScopeType = MatchScope.fromValue(matchScope);
+      if (matchScopeType == null) {
+        throw new MojoExecutionException("Invalid matchScope specified: " + matchScope);
+      }
+      getLog().info("matchScope set to: " + matchScopeType.getValue());
     }
 
+    if (maxMatchLength < 1 || maxMatchLength > Integer.MAX_VALUE / 4) {
+      throw new MojoExecutionException("Invalid maxMatchLength specified: " + maxMatchLength);
+    }
+
+    if (maxInMemorySize < 1) {
+      throw new MojoExecutionException("Invalid maxInMemorySize specified: " + maxInMemorySize);
+    }
+
+  }
+
+  private void setupBinaryHandling() throws MojoExecutionException {
+    if (binaryHandling == null || binaryHandling.isEmpty()) {
+      return;
+    }
+
+    binaryHandlingType = BinaryHandling.fromValue(binaryHandling);
+    if (binaryHandlingType == null) {
+      throw new MojoExecutionException("Invalid binaryHandling specified: " + binaryHandling);
+    }
+
+    getLog().info("binaryHandling set to: " + binaryHandlingType.getValue());
+
+  }
+
+  private void setupMetricsFile() {
+    if (metricsFile != null && !metricsFile.isEmpty()) {
+      metricsFilePath = baseDirPath.resolve(metricsFile);
+      excludeOutputPath(metricsFilePath);
+      getLog().info("metricsFile set to: " + metricsFilePath);
+    }
+
+  }
+
+  private void setupDryRun() {
+    // The reports of earlier dry runs are never processed either
+    excludeOutputPath(buildOutputDirectory());
+
+    if (!dryRun) {
+      return;
+    }
+
+    threadCount = Math.max(threadCount, Runtime.getRuntime().availableProcessors());
+    dryRunReport = new DryRunReport(baseDirPath, rules);
+    dryRunReportFile = buildOutputFile("-dry-run.json");
+
+    getLog().info("dryRun set to: " + dryRunReportFile + " (" + threadCount + " threads)");
+
+  }
+
+  /**
+   * @return a file named after the execution id under target/find-and-replace
+   */
+  private Path buildOutputFile(String suffix) {
+    String executionId = mojoExecution == null ? "default" : mojoExecution.getExecutionId();
+    return buildOutputDirectory().resolve(executionId + suffix);
+  }
+
+  /**
+   * @return target/find-and-replace, which only holds what the executions of this plugin write
+   */
+  private Path buildOutputDirectory() {
+    String buildDirectory = project == null ? Paths.get(baseDirPath.toString(), "target").toString()
+        : project.getBuild().getDirectory();
+    return Paths.get(buildDirectory, "find-and-replace");
+  }
+
+  /**
+   * Keeps a file or directory the execution writes to out of the walk, as it may lie beneath baseDir.
+   */
+  private void excludeOutputPath(Path path) {
+    outputPaths.add(path.toAbsolutePath().normalize());
+  }
+
+  private void setupIncremental() throws MojoExecutionException {
+    if (!incremental) {
+      return;
+    }
+
+    if (dryRun) {
+      getLog().warn("incremental is ignored with dryRun.");
+      return;
+    }
+
+    if (!processFileContents) {
+      getLog().warn("incremental only applies to file-contents replacement.");
+      return;
+    }
+
+    Path indexFile = buildOutputFile(".index");
+
+    // Every option that changes the resulting contents invalidates the index
+    String optionsHash = FingerprintIndex.hash(String.join("\n", rules.toString(), String.valueOf(literal),
+        charset.name(), matchScopeType.getValue(), String.valueOf(maxMatchLength), String.valueOf(maxInMemorySize),
+        String.valueOf(preserveLineEndings), String.valueOf(skipUnmatchedFiles), binaryHandlingType.getValue()));
+
+    try {
+      fingerprintIndex = FingerprintIndex.load(indexFile, baseDirPath, optionsHash);
+    } catch (IOException e) {
+      throw new MojoExecutionException("Unable to load incremental index at: " + indexFile, e);
+    }
+    excludeOutputPath(indexFile.getParent());
+
+    getLog().info("incremental index set to: " + indexFile + " (" + fingerprintIndex.previousSize() + " entries)");
+
+  }
+
+  private void setupChangedSince() throws MojoExecutionException {
+    if (changedSince == null || changedSince.isEmpty()) {
+      return;
+    }
+
+    try {
+      changedPaths = ChangedPaths.since(changedSince, baseDirPath);
+    } catch (IOException e) {
+      throw new MojoExecutionException("Invalid changedSince specified: " + changedSince, e);
+    }
+
+    if (changedPaths == null) {
+      getLog().warn("changedSince is ignored, baseDir is not in a git repository or git is not available.");
+      return;
+    }
+
+    getLog().info("changedSince set to: " + changedSince + " (" + changedPaths.size() + " changed files)");
+
   }
 
   private void setupBaseDir() {
@@ -269,8 +900,28 @@ public class FindAndReplaceMojo extends AbstractMojo {
     sb.append(", processDirectoryNames=").append(processDirectoryNames);
     sb.append(", fileMaskList=").append(fileMaskList);
     sb.append(", exclusionsList=").append(exclusionsList);
+    sb.append(", includes=").append(includes);
+    sb.append(", excludes=").append(excludes);
     sb.append(", encoding=").append(encoding);
     sb.append(", replaceAll=").append(replaceAll);
+    sb.append(", replacements=").append(replacements);
+    sb.append(", literal=").append(literal);
+    sb.append(", threads='").append(threads).append('\'');
+    sb.append(", executor='").append(executor).append('\'');
+    sb.append(", pipeline=").append(pipeline);
+    sb.append(", pipelineQueueSize=").append(pipelineQueueSize);
+    sb.append(", skipUnmatchedFiles=").append(skipUnmatchedFiles);
+    sb.append(", contentsReader='").append(contentsReader).append('\'');
+    sb.append(", matchScope='").append(matchScope).append('\'');
+    sb.append(", maxMatchLength=").append(maxMatchLength);
+    sb.append(", maxInMemorySize=").append(maxInMemorySize);
+    sb.append(", preserveLineEndings=").append(preserveLineEndings);
+    sb.append(", binaryHandling='").append(binaryHandling).append('\'');
+    sb.append(", incremental=").append(incremental);
+    sb.append(", changedSince='").append(changedSince).append('\'');
+    sb.append(", respectIgnoreFiles=").append(respectIgnoreFiles);
+    sb.append(", dryRun=").append(dryRun);
+    sb.append(", metricsFile='").append(metricsFile).append('\'');
     sb.append('}');
     return sb.toString();
   }
@@ -0,0 +1,55 @@
+package io.github.floverfelt.find.and.replace.maven.plugin;
+
+/**
+ * A single find and replace rule configured within the replacements list.
+ */
+public class Replacement {
+
+  /**
+   * The regex string to find.
+   */
+  private String findRegex;
+
+  /**
+   * The value to replace the matching findRegex with.
+   */
+  private String replaceValue = "";
+
+  /**
+   * Whether all matches or just the first match are replaced. Defaults to the plugin's replaceAll.
+   */
+  private Boolean replaceAll;
+
+  /**
+   * A CSV of the file types the rule is limited to, on top of the plugin's fileMask. Ignored for directories.
+   */
+  private String fileMask;
+
+  public String getFindRegex() {
+    return findRegex;
+  }
+
+  public String getReplaceValue() {
+    return replaceValue;
+  }
+
+  public Boolean getReplaceAll() {
+    return replaceAll;
+  }
+
+  public String getFileMask() {
+    return fileMask;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder("Replacement{");
+    sb.append("findRegex='").append(findRegex).append('\'');
+    sb.append(", replaceValue='").append(replaceValue).append('\'');
+    sb.append(", replaceAll=").append(replaceAll);
+    sb.append(", fileMask='").append(fileMask).append('\'');
+    sb.append('}');
+    return sb.toString();
+  }
+
+}
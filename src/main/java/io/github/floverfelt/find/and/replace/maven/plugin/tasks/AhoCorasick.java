@@ -0,0 +1,308 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+
+/**
+ * An Aho-Corasick automaton finding any number of literal terms in a single linear scan.
+ * <p>
+ * Matches are reported leftmost first, the longest term winning among terms starting at the same index, and do not
+ * overlap. This is what an alternation of the quoted terms, longest first, would find. When two terms are equal
+ * the first one wins. Terms can be disabled per scan, for instance once a term replacing only its first match
+ * has been replaced.
+ * <p>
+ * Immutable and thread safe once built.
+ */
+final class AhoCorasick {
+
+  private static final int ROOT = 0;
+
+  private static final int NO_TERM = -1;
+
+  private final int[] termLengths;
+
+  /**
+   * Transitions of the root state, indexed by char, so mismatches at the root cost a single array access.
+   */
+  private final int[] rootTransitions = new int[Character.MAX_VALUE + 1];
+
+  /**
+   * Sorted transition chars and their target states, for all but the root state.
+   */
+  private final char[][] transitionChars;
+
+  private final int[][] transitionTargets;
+
+  private final int[] failures;
+
+  private final int[] depths;
+
+  /**
+   * The term ending at a state, or NO_TERM.
+   */
+  private final int[] terms;
+
+  /**
+   * The nearest state along the failure links ending a term, or ROOT.
+   */
+  private final int[] termLinks;
+
+  private final int longestTerm;
+
+  /**
+   * @param terms the non-empty terms to find
+   */
+  AhoCorasick(List<String> terms) {
+
+    termLengths = new int[terms.size()];
+
+    List<Map<Character, Integer>> trie = new ArrayList<>();
+    List<Integer> stateDepths = new ArrayList<>();
+    List<Integer> stateTerms = new ArrayList<>();
+    trie.add(new TreeMap<>());
+    stateDepths.add(0);
+    stateTerms.add(NO_TERM);
+
+    int longest = 0;
+    for (int term = 0; term < terms.size(); term++) {
+      String value = terms.get(term);
+      if (value.isEmpty()) {
+        throw new IllegalArgumentException("Literal terms cannot be empty.");
+      }
+      termLengths[term] = value.length();
+      longest = Math.max(longest, value.length());
+
+      int state = ROOT;
+      for (int i = 0; i < value.length(); i++) {
+        Integer next = trie.get(state).get(value.charAt(i));
+        if (next == null) {
+          next = trie.size();
+          trie.add(new TreeMap<>());
+          stateDepths.add(i + 1);
+          stateTerms.add(NO_TERM);
+          trie.get(state).put(value.charAt(i), next);
+        }
+        state = next;
+      }
+      if (stateTerms.get(state) == NO_TERM) {
+        stateTerms.set(state, term);
+      }
+    }
+    longestTerm = longest;
+
+    int stateCount = trie.size();
+    transitionChars = new char[stateCount][];
+    transitionTargets = new int[stateCount][];
+    failures = new int[stateCount];
+    depths = new int[stateCount];
+    this.terms = new int[stateCount];
+    termLinks = new int[stateCount];
+
+    for (int state = 0; state < stateCount; state++) {
+      Map<Character, Integer> children = trie.get(state);
+      transitionChars[state] = new char[children.size()];
+      transitionTargets[state] = new int[children.size()];
+      int i = 0;
+      for (Map.Entry<Character, Integer> child : children.entrySet()) {
+        transitionChars[state][i] = child.getKey();
+        transitionTargets[state][i] = child.getValue();
+        i++;
+      }
+      depths[state] = stateDepths.get(state);
+      this.terms[state] = stateTerms.get(state);
+    }
+
+    for (int i = 0; i < transitionChars[ROOT].length; i++) {
+      rootTransitions[transitionChars[ROOT][i]] = transitionTargets[ROOT][i];
+    }
+
+    // Breadth first, so the failure of a state is always resolved before its children
+    Queue<Integer> queue = new ArrayDeque<>();
+    for (int child : transitionTargets[ROOT]) {
+      queue.add(child);
+    }
+    while (!queue.isEmpty()) {
+      int state = queue.poll();
+      for (int i = 0; i < transitionChars[state].length; i++) {
+        int child = transitionTargets[state][i];
+        int failure = next(failures[state], transitionChars[state][i]);
+        failures[child] = failure;
+        termLinks[child] = this.terms[failure] != NO_TERM ? failure : termLinks[failure];
+        queue.add(child);
+      }
+    }
+
+  }
+
+  /**
+   * @return the length of the longest term, a match never spans more chars than this
+   */
+  int longestTerm() {
+    return longestTerm;
+  }
+
+  /**
+   * Finds the next match of an enabled term within the region.
+   * <p>
+   * Unless the region ends the input, a match or partial match running up to the end of the region may still
+   * grow with the chars that follow. In that case no match is reported, and {@link Match#getHoldFrom()} is the
+   * first index that has to be scanned again once more input is available.
+   *
+   * @param input      the input to scan
+   * @param from       the start of the region
+   * @param to         the end of the region, exclusive
+   * @param endOfInput whether no input follows the region
+   * @param disabled   the terms to ignore, indexed by term
+   * @param match      receives the match
+   * @return whether a match was found
+   */
+  boolean find(CharSequence input, int from, int to, boolean endOfInput, boolean[] disabled, Match match) {
+
+    int state = ROOT;
+    int matchStart = -1;
+    int matchEnd = -1;
+    int matchTerm = NO_TERM;
+
+    for (int i = from; i < to; i++) {
+
+      state = next(state, input.charAt(i));
+
+      int end = i + 1;
+      // The longest enabled term ending here starts the earliest
+      for (int s = terms[state] != NO_TERM ? state : termLinks[state]; s != ROOT; s = termLinks[s]) {
+        int term = terms[s];
+        if (!disabled[term]) {
+          int start = end - termLengths[term];
+          if (matchTerm == NO_TERM || start <= matchStart) {
+            matchStart = start;
+            matchEnd = end;
+            matchTerm = term;
+          }
+          break;
+        }
+      }
+
+      // Nothing in progress can start at or before the match anymore
+      if (matchTerm != NO_TERM && end - depths[state] > matchStart) {
+        match.set(matchStart, matchEnd, matchTerm);
+        return true;
+      }
+
+    }
+
+    if (matchTerm != NO_TERM && (endOfInput || to - depths[state] > matchStart)) {
+      match.set(matchStart, matchEnd, matchTerm);
+      return true;
+    }
+
+    // A partial match may have started before the pending match
+    int partialStart = to - depths[state];
+    match.holdFrom = endOfInput ? to : matchTerm != NO_TERM ? Math.min(matchStart, partialStart) : partialStart;
+    return false;
+
+  }
+
+  /**
+   * Same as {@link #find(CharSequence, int, int, boolean, boolean[], Match)} over bytes, each byte standing for the
+   * char of the same unsigned value, so terms are byte sequences held as ISO-8859-1 strings.
+   */
+  boolean find(byte[] input, int from, int to, boolean endOfInput, boolean[] disabled, Match match) {
+
+    int state = ROOT;
+    int matchStart = -1;
+    int matchEnd = -1;
+    int matchTerm = NO_TERM;
+
+    for (int i = from; i < to; i++) {
+
+      state = next(state, (char) (input[i] & 0xff));
+
+      int end = i + 1;
+      for (int s = terms[state] != NO_TERM ? state : termLinks[state]; s != ROOT; s = termLinks[s]) {
+        int term = terms[s];
+        if (!disabled[term]) {
+          int start = end - termLengths[term];
+          if (matchTerm == NO_TERM || start <= matchStart) {
+            matchStart = start;
+            matchEnd = end;
+            matchTerm = term;
+          }
+          break;
+        }
+      }
+
+      if (matchTerm != NO_TERM && end - depths[state] > matchStart) {
+        match.set(matchStart, matchEnd, matchTerm);
+        return true;
+      }
+
+    }
+
+    if (matchTerm != NO_TERM && (endOfInput || to - depths[state] > matchStart)) {
+      match.set(matchStart, matchEnd, matchTerm);
+      return true;
+    }
+
+    int partialStart = to - depths[state];
+    match.holdFrom = endOfInput ? to : matchTerm != NO_TERM ? Math.min(matchStart, partialStart) : partialStart;
+    return false;
+
+  }
+
+  private int next(int state, char c) {
+
+    while (state != ROOT) {
+      int i = Arrays.binarySearch(transitionChars[state], c);
+      if (i >= 0) {
+        return transitionTargets[state][i];
+      }
+      state = failures[state];
+    }
+
+    return rootTransitions[c];
+
+  }
+
+  /**
+   * The result of {@link #find}, reusable across calls.
+   */
+  static final class Match {
+
+    private int start;
+
+    private int end;
+
+    private int term;
+
+    private int holdFrom;
+
+    private void set(int start, int end, int term) {
+      this.start = start;
+      this.end = end;
+      this.term = term;
+    }
+
+    int getStart() {
+      return start;
+    }
+
+    int getEnd() {
+      return end;
+    }
+
+    int getTerm() {
+      return term;
+    }
+
+    int getHoldFrom() {
+      return holdFrom;
+    }
+
+  }
+
+}
@@ -0,0 +1,46 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+/**
+ * What file-contents replacement does with files whose first bytes do not look like text in the configured charset.
+ */
+public enum BinaryHandling {
+
+  /**
+   * Binary files are left untouched.
+   */
+  SKIP("skip"),
+
+  /**
+   * The execution fails on the first binary file.
+   */
+  FAIL("fail"),
+
+  /**
+   * The rules are matched against the raw bytes, so the bytes around the matches are kept as they are.
+   */
+  BYTE_LEVEL_REPLACE("byte-level-replace");
+
+  private final String value;
+
+  BinaryHandling(String value) {
+    this.value = value;
+  }
+
+  public String getValue() {
+    return value;
+  }
+
+  /**
+   * @param value the configured value
+   * @return the matching handling, or null if there is none
+   */
+  public static BinaryHandling fromValue(String value) {
+    for (BinaryHandling binaryHandling : values()) {
+      if (binaryHandling.value.equals(value)) {
+        return binaryHandling;
+      }
+    }
+    return null;
+  }
+
+}
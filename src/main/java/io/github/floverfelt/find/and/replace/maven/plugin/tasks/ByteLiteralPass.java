@@ -0,0 +1,136 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Replaces the literals on the file's bytes through a window of the read buffer size plus the longest literal,
+ * whatever the match scope, as literals without line terminators find the same matches across lines.
+ * The line match scope still terminates every line by \n unless line endings are preserved.
+ */
+final class ByteLiteralPass extends ContentsPass {
+
+  private final FileContents fileContents;
+
+  private final ByteLiteralReplacer byteReplacer;
+
+  private final boolean terminateLines;
+
+  /**
+   * @param terminateLines whether to terminate every line by \n the way the line match scope writes lines
+   */
+  ByteLiteralPass(FileContents fileContents, ByteLiteralReplacer byteReplacer, boolean terminateLines) {
+    this.fileContents = fileContents;
+    this.byteReplacer = byteReplacer;
+    this.terminateLines = terminateLines;
+  }
+
+  @Override
+  boolean run(OutputStream out, int[] counts, boolean untilFirstMatch) throws IOException {
+
+    try (ReadableByteChannel channel = fileContents.openChannel();
+         OutputStream bos = out != null ? new BufferedOutputStream(out, READ_BUFFER_SIZE) : null) {
+
+      ByteOutput output = new ByteOutput(bos, terminateLines);
+      byte[] window = new byte[READ_BUFFER_SIZE + byteReplacer.longestTerm()];
+      AhoCorasick.Match match = new AhoCorasick.Match();
+      boolean[] disabled = new boolean[byteReplacer.ruleCount()];
+      boolean matched = false;
+      int length = 0;
+
+      for (boolean endOfInput = false; !endOfInput; ) {
+        int read = channel.read(ByteBuffer.wrap(window, length, window.length - length));
+        endOfInput = read == -1;
+        length += endOfInput ? 0 : read;
+
+        matched |= byteReplacer.replace(window, 0, length, endOfInput, disabled, counts, output, match) > 0;
+        if (untilFirstMatch && matched) {
+          return true;
+        }
+
+        int held = match.getHoldFrom();
+        System.arraycopy(window, held, window, 0, length - held);
+        length -= held;
+      }
+
+      output.finish();
+      return matched;
+
+    }
+
+  }
+
+  /**
+   * Writes replaced bytes, optionally terminating every line by \n the way the line match scope writes lines:
+   * \r\n and \r become \n, and a last line without a terminator gets one. Without an output the bytes are discarded.
+   */
+  private static final class ByteOutput implements ByteLiteralReplacer.Output {
+
+    private final OutputStream out;
+
+    private final boolean terminateLines;
+
+    private boolean lineOpen = false;
+
+    private boolean afterCarriageReturn = false;
+
+    private ByteOutput(OutputStream out, boolean terminateLines) {
+      this.out = out;
+      this.terminateLines = terminateLines;
+    }
+
+    @Override
+    public void writeInput(byte[] input, int from, int to) throws IOException {
+
+      if (out == null) {
+        return;
+      }
+
+      if (!terminateLines) {
+        out.write(input, from, to - from);
+        return;
+      }
+
+      int start = from;
+      for (int i = from; i < to; i++) {
+        byte b = input[i];
+        if (b != '\n' && b != '\r') {
+          lineOpen = true;
+          afterCarriageReturn = false;
+          continue;
+        }
+        out.write(input, start, i - start);
+        start = i + 1;
+        // The \n of a \r\n was written with the \r
+        if (b == '\r' || !afterCarriageReturn) {
+          out.write('\n');
+        }
+        lineOpen = false;
+        afterCarriageReturn = b == '\r';
+      }
+      out.write(input, start, to - start);
+
+    }
+
+    @Override
+    public void writeReplaceValue(byte[] replaceValue) throws IOException {
+      if (out == null) {
+        return;
+      }
+      out.write(replaceValue);
+      lineOpen = true;
+      afterCarriageReturn = false;
+    }
+
+    private void finish() throws IOException {
+      if (out != null && terminateLines && lineOpen) {
+        out.write('\n');
+      }
+    }
+
+  }
+
+}
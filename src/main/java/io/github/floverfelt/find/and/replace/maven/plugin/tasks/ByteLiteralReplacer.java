@@ -0,0 +1,125 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Same as {@link LiteralReplacer}, over the encoded bytes instead of the decoded chars: the literals and replace
+ * values are encoded once with the charset, so file contents are never decoded nor encoded.
+ * <p>
+ * Only valid for charsets where a match of the encoded literal always lies on char boundaries and bytes outside
+ * the matches are written back as they were, see {@link #supports(Charset)}.
+ * <p>
+ * Immutable and thread safe, the per-input state is the disabled array and the match passed in.
+ */
+final class ByteLiteralReplacer {
+
+  private final List<ReplacementRule> rules;
+
+  private final byte[][] replaceValues;
+
+  private final AhoCorasick automaton;
+
+  /**
+   * @param rules   the literal rules, in order, with literals and replace values the charset can encode
+   * @param charset the charset of the contents
+   */
+  ByteLiteralReplacer(List<ReplacementRule> rules, Charset charset) {
+
+    this.rules = rules;
+    this.replaceValues = new byte[rules.size()][];
+
+    List<String> terms = new ArrayList<>(rules.size());
+    for (int i = 0; i < rules.size(); i++) {
+      terms.add(new String(rules.get(i).getFindRegex().pattern().getBytes(charset), StandardCharsets.ISO_8859_1));
+      replaceValues[i] = rules.get(i).getReplaceValue().getBytes(charset);
+    }
+    automaton = new AhoCorasick(terms);
+
+  }
+
+  /**
+   * UTF-8 is self-synchronizing, and ISO-8859-1 and US-ASCII have one byte per char.
+   *
+   * @return whether the charset's contents can be replaced at the byte level
+   */
+  static boolean supports(Charset charset) {
+    return charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.ISO_8859_1)
+        || charset.equals(StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * @return whether the charset encodes the literal and replace value of every rule
+   */
+  static boolean canEncode(List<ReplacementRule> rules, Charset charset) {
+    for (ReplacementRule rule : rules) {
+      if (!charset.newEncoder().canEncode(rule.getFindRegex().pattern())
+          || !charset.newEncoder().canEncode(rule.getReplaceValue())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  int ruleCount() {
+    return rules.size();
+  }
+
+  /**
+   * @return the length in bytes of the longest encoded literal
+   */
+  int longestTerm() {
+    return automaton.longestTerm();
+  }
+
+  /**
+   * Writes the region with all matches replaced. A rule replacing only its first match is disabled once it replaced.
+   * <p>
+   * Unless the region ends the input, the bytes that may still be part of a match are not written,
+   * they start at {@link AhoCorasick.Match#getHoldFrom()}.
+   *
+   * @param input      the input
+   * @param from       the start of the region
+   * @param to         the end of the region, exclusive
+   * @param endOfInput whether no input follows the region
+   * @param disabled   the rules to ignore, indexed like the rules
+   * @param counts     incremented by the replaced matches of each rule, indexed like the rules
+   * @param out        receives the replaced region
+   * @param match      the match to reuse
+   * @return the number of replaced matches
+   */
+  int replace(byte[] input, int from, int to, boolean endOfInput, boolean[] disabled, int[] counts, Output out,
+              AhoCorasick.Match match) throws IOException {
+
+    int replaced = 0;
+    int position = from;
+
+    while (automaton.find(input, position, to, endOfInput, disabled, match)) {
+      out.writeInput(input, position, match.getStart());
+      out.writeReplaceValue(replaceValues[match.getTerm()]);
+      disabled[match.getTerm()] = !rules.get(match.getTerm()).isReplaceAll();
+      counts[match.getTerm()]++;
+      position = match.getEnd();
+      replaced++;
+    }
+
+    out.writeInput(input, position, match.getHoldFrom());
+    return replaced;
+
+  }
+
+  /**
+   * Receives the replaced bytes, the input between matches apart from the replace values.
+   */
+  interface Output {
+
+    void writeInput(byte[] input, int from, int to) throws IOException;
+
+    void writeReplaceValue(byte[] replaceValue) throws IOException;
+
+  }
+
+}
@@ -0,0 +1,184 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The files that differ from a git ref: files changed in the index or the working tree since the ref, and untracked
+ * files git does not ignore. Paths are relative to baseDir with / separators, like for {@link PathFilter}.
+ * <p>
+ * The changes are read from the local repository by the git executable, which never fetches anything for them.
+ * <p>
+ * Immutable and thread safe.
+ */
+public final class ChangedPaths {
+
+  /**
+   * Discards the errors git prints, such as when baseDir is not in a repository, as Redirect.DISCARD does from
+   * Java 9.
+   */
+  private static final File NULL_FILE = new File(System.getProperty("os.name").startsWith("Windows") ? "NUL"
+      : "/dev/null");
+
+  private final Set<String> files;
+
+  private final Set<String> directories;
+
+  private ChangedPaths(Set<String> files, Set<String> directories) {
+    this.files = files;
+    this.directories = directories;
+  }
+
+  /**
+   * @param ref     the git ref to compare with, resolved to a commit
+   * @param baseDir the directory the paths are relative to
+   * @return the changed files under baseDir, or null if baseDir is not in a git repository or git is not available
+   * @throws IOException if the ref does not resolve to a commit, or git fails
+   */
+  public static ChangedPaths since(String ref, Path baseDir) throws IOException {
+
+    File directory = baseDir.toFile();
+    GitOutput topLevel = git(directory, "rev-parse", "--show-toplevel");
+    if (topLevel == null || topLevel.exitCode != 0) {
+      return null;
+    }
+    Path repositoryRoot = Paths.get(topLevel.text().trim());
+
+    GitOutput commit = git(directory, "rev-parse", "--verify", "--quiet", ref + "^{commit}");
+    if (commit == null || commit.exitCode != 0) {
+      throw new IOException("Unable to resolve git ref to a commit: " + ref);
+    }
+
+    // Both list paths relative to the repository root when run from there
+    List<String> changed = new ArrayList<>();
+    changed.addAll(gitPaths(repositoryRoot.toFile(), "diff", "--name-only", "--no-renames", "--no-ext-diff", "-z",
+        commit.text().trim(), "--"));
+    changed.addAll(gitPaths(repositoryRoot.toFile(), "ls-files", "--others", "--exclude-standard", "-z"));
+
+    Path base = baseDir.toRealPath();
+    Set<String> files = new HashSet<>();
+    Set<String> directories = new HashSet<>();
+
+    for (String path : changed) {
+      Path relative = base.relativize(repositoryRoot.resolve(path));
+      if (relative.startsWith("..")) {
+        continue;
+      }
+      String relativePath = relative.toString().replace(File.separatorChar, '/');
+      files.add(relativePath);
+      for (int slash = relativePath.lastIndexOf('/'); slash > 0; slash = relativePath.lastIndexOf('/', slash - 1)) {
+        directories.add(relativePath.substring(0, slash));
+      }
+    }
+
+    return new ChangedPaths(Collections.unmodifiableSet(files), Collections.unmodifiableSet(directories));
+
+  }
+
+  /**
+   * @return the number of changed files under baseDir
+   */
+  public int size() {
+    return files.size();
+  }
+
+  /**
+   * @param relativePath the path of a file relative to baseDir
+   * @return whether the file differs from the ref
+   */
+  boolean isChanged(String relativePath) {
+    return files.contains(relativePath);
+  }
+
+  /**
+   * @param relativePath the path of a directory relative to baseDir
+   * @return whether the directory holds a file that differs from the ref, at any depth
+   */
+  boolean holdsChanges(String relativePath) {
+    return directories.contains(relativePath);
+  }
+
+  private static List<String> gitPaths(File directory, String... args) throws IOException {
+
+    GitOutput output = git(directory, args);
+    if (output == null || output.exitCode != 0) {
+      throw new IOException("git " + String.join(" ", args) + " failed in: " + directory);
+    }
+
+    List<String> paths = new ArrayList<>();
+    for (String path : output.text().split("\0")) {
+      if (!path.isEmpty()) {
+        paths.add(path);
+      }
+    }
+    return paths;
+
+  }
+
+  /**
+   * @return the output of git, or null if git cannot be run
+   */
+  private static GitOutput git(File directory, String... args) throws IOException {
+
+    List<String> command = new ArrayList<>(args.length + 1);
+    command.add("git");
+    command.addAll(Arrays.asList(args));
+
+    ProcessBuilder processBuilder = new ProcessBuilder(command)
+        .directory(directory)
+        .redirectError(NULL_FILE);
+    // Keeps git from refreshing the index, the repository is only read
+    processBuilder.environment().put("GIT_OPTIONAL_LOCKS", "0");
+
+    Process process;
+    try {
+      process = processBuilder.start();
+    } catch (IOException e) {
+      return null;
+    }
+
+    try (InputStream in = process.getInputStream()) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+        out.write(buffer, 0, read);
+      }
+      return new GitOutput(process.waitFor(), out.toByteArray());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while running git.", e);
+    } finally {
+      process.destroy();
+    }
+
+  }
+
+  private static final class GitOutput {
+
+    private final int exitCode;
+
+    private final byte[] bytes;
+
+    private GitOutput(int exitCode, byte[] bytes) {
+      this.exitCode = exitCode;
+      this.bytes = bytes;
+    }
+
+    private String text() {
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+  }
+
+}
@@ -0,0 +1,113 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A pass of the rules over the contents of a file, through one of the ways file contents are read and matched.
+ * <p>
+ * The same pass tells whether the file holds a match, counts the matches, or replaces them, only where the replaced
+ * contents go differs. Skipping unmatched files, counting for a dry run and replacing therefore always find the same
+ * matches, whichever way the file is read.
+ * <p>
+ * A pass may run more than once over the same file, contents held in memory are only read once.
+ */
+abstract class ContentsPass implements Closeable {
+
+  static final int READ_BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * @param out             receives the replaced contents, or null to discard them
+   * @param counts          incremented by the matches of each rule, indexed like the rules of the file
+   * @param untilFirstMatch whether to stop at the first match, only when the replaced contents are discarded
+   * @return whether any rule matched
+   */
+  abstract boolean run(OutputStream out, int[] counts, boolean untilFirstMatch) throws IOException;
+
+  /**
+   * Releases what the pass holds on to once done with the file, nothing unless overridden.
+   */
+  @Override
+  public void close() {
+    // nothing to release
+  }
+
+  /**
+   * @return a writer encoding into the output, or a writer discarding everything if there is none
+   */
+  static Writer writer(OutputStream out, Charset charset) {
+    return out != null ? new BufferedWriter(new OutputStreamWriter(out, charset)) : new DiscardingWriter();
+  }
+
+  static void write(Writer writer, CharSequence chars, int start, int end) throws IOException {
+    if (chars instanceof CharBuffer && ((CharBuffer) chars).hasArray()) {
+      CharBuffer charBuffer = (CharBuffer) chars;
+      writer.write(charBuffer.array(), charBuffer.arrayOffset() + charBuffer.position() + start, end - start);
+    } else if (chars instanceof String) {
+      writer.write((String) chars, start, end - start);
+    } else if (chars instanceof LineBuffers.CharsView) {
+      ((LineBuffers.CharsView) chars).write(writer, start, end);
+    } else {
+      writer.append(chars, start, end);
+    }
+  }
+
+  /**
+   * Writes the terminator of a line, or \n in its place unless line endings are preserved.
+   */
+  static void writeTerminator(Writer writer, char[] chars, int end, int next, boolean preserveLineEndings)
+      throws IOException {
+    if (preserveLineEndings) {
+      writer.write(chars, end, next - end);
+    } else {
+      writer.write('\n');
+    }
+  }
+
+  /**
+   * @return the index of the first line terminator at or after start, or length
+   */
+  static int lineEnd(char[] chars, int length, int start) {
+    int end = start;
+    while (end < length && chars[end] != '\n' && chars[end] != '\r') {
+      end++;
+    }
+    return end;
+  }
+
+  /**
+   * @return the index after the line terminator starting at end, which is \n, \r or \r\n as for BufferedReader.readLine
+   */
+  static int terminatorEnd(char[] chars, int length, int end) {
+    if (end < length && chars[end] == '\r' && end + 1 < length && chars[end + 1] == '\n') {
+      return end + 2;
+    }
+    return end < length ? end + 1 : end;
+  }
+
+  private static final class DiscardingWriter extends Writer {
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+      // discarded
+    }
+
+    @Override
+    public void flush() {
+      // nothing to flush
+    }
+
+    @Override
+    public void close() {
+      // nothing to close
+    }
+
+  }
+
+}
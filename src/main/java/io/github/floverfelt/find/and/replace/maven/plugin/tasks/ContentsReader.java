@@ -0,0 +1,41 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+/**
+ * How file contents are read during file-contents replacement.
+ */
+public enum ContentsReader {
+
+  /**
+   * Reads the file through a FileChannel into reusable buffers and matches directly against the decoded chars.
+   */
+  NIO("nio"),
+
+  /**
+   * Reads the file line by line through a BufferedReader.
+   */
+  BUFFERED("buffered");
+
+  private final String value;
+
+  ContentsReader(String value) {
+    this.value = value;
+  }
+
+  public String getValue() {
+    return value;
+  }
+
+  /**
+   * @param value the configured value
+   * @return the matching reader, or null if there is none
+   */
+  public static ContentsReader fromValue(String value) {
+    for (ContentsReader contentsReader : values()) {
+      if (contentsReader.value.equals(value)) {
+        return contentsReader;
+      }
+    }
+    return null;
+  }
+
+}
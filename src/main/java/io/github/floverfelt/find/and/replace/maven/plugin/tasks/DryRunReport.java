@@ -0,0 +1,189 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The matches a dry run found, per file and per rule, written out as JSON.
+ * <p>
+ * Only files and directories with at least one match are listed. Matches are recorded on the thread walking
+ * the tree, in walk order, so the report is identical whatever the number of threads.
+ */
+public class DryRunReport {
+
+  private final Path baseDir;
+
+  private final List<ReplacementRule> rules;
+
+  private final int[] ruleMatches;
+
+  private final List<Entry> entries = new ArrayList<>();
+
+  private int scannedCount = 0;
+
+  /**
+   * @param baseDir the directory paths are reported relative to
+   * @param rules   the replacement rules, matches are reported in the same order
+   */
+  public DryRunReport(Path baseDir, List<ReplacementRule> rules) {
+    this.baseDir = baseDir.toAbsolutePath().normalize();
+    this.rules = rules;
+    this.ruleMatches = new int[rules.size()];
+  }
+
+  /**
+   * @param file            the scanned file or directory
+   * @param contentsMatches the matches within the contents indexed like the rules, or null if not scanned
+   * @param nameMatches     the matches within the name indexed like the rules, or null if not scanned
+   */
+  void record(File file, int[] contentsMatches, int[] nameMatches) {
+
+    scannedCount++;
+
+    int matches = add(contentsMatches) + add(nameMatches);
+    if (matches > 0) {
+      String path = baseDir.relativize(file.toPath().toAbsolutePath().normalize()).toString().replace('\\', '/');
+      entries.add(new Entry(path, contentsMatches, nameMatches));
+    }
+
+  }
+
+  private int add(int[] matches) {
+
+    if (matches == null) {
+      return 0;
+    }
+
+    int sum = 0;
+    for (int i = 0; i < matches.length; i++) {
+      ruleMatches[i] += matches[i];
+      sum += matches[i];
+    }
+    return sum;
+
+  }
+
+  /**
+   * @return the number of files and directories scanned
+   */
+  public int getScannedCount() {
+    return scannedCount;
+  }
+
+  /**
+   * @return the number of files and directories with at least one match
+   */
+  public int getMatchedCount() {
+    return entries.size();
+  }
+
+  /**
+   * @return the total number of matches
+   */
+  public int getMatchCount() {
+    int sum = 0;
+    for (int matches : ruleMatches) {
+      sum += matches;
+    }
+    return sum;
+  }
+
+  /**
+   * @param reportFile the JSON file to write, its parent directories are created
+   */
+  public void write(Path reportFile) throws IOException {
+
+    Files.createDirectories(reportFile.toAbsolutePath().getParent());
+
+    try (BufferedWriter writer = Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8)) {
+
+      writer.write("{\n  \"baseDir\": ");
+      writeString(writer, baseDir.toString());
+      writer.write(",\n  \"scanned\": " + scannedCount);
+      writer.write(",\n  \"matched\": " + getMatchedCount());
+      writer.write(",\n  \"matches\": " + getMatchCount());
+
+      writer.write(",\n  \"rules\": [");
+      for (int i = 0; i < rules.size(); i++) {
+        writer.write(i == 0 ? "\n    {\"findRegex\": " : ",\n    {\"findRegex\": ");
+        writeString(writer, rules.get(i).getFindRegex().pattern());
+        writer.write(", \"replaceValue\": ");
+        writeString(writer, rules.get(i).getReplaceValue());
+        writer.write(", \"matches\": " + ruleMatches[i] + "}");
+      }
+      writer.write(rules.isEmpty() ? "]" : "\n  ]");
+
+      writer.write(",\n  \"files\": [");
+      for (int i = 0; i < entries.size(); i++) {
+        Entry entry = entries.get(i);
+        writer.write(i == 0 ? "\n    {\"path\": " : ",\n    {\"path\": ");
+        writeString(writer, entry.path);
+        if (entry.contentsMatches != null) {
+          writer.write(", \"contents\": ");
+          writeCounts(writer, entry.contentsMatches);
+        }
+        if (entry.nameMatches != null) {
+          writer.write(", \"name\": ");
+          writeCounts(writer, entry.nameMatches);
+        }
+        writer.write("}");
+      }
+      writer.write(entries.isEmpty() ? "]\n}\n" : "\n  ]\n}\n");
+
+    }
+
+  }
+
+  private static void writeCounts(Writer writer, int[] counts) throws IOException {
+    writer.write('[');
+    for (int i = 0; i < counts.length; i++) {
+      if (i > 0) {
+        writer.write(", ");
+      }
+      writer.write(String.valueOf(counts[i]));
+    }
+    writer.write(']');
+  }
+
+  private static void writeString(Writer writer, String value) throws IOException {
+
+    writer.write('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        writer.write('\\');
+        writer.write(c);
+      } else if (c < 0x20) {
+        writer.write(String.format("\\u%04x", (int) c));
+      } else {
+        writer.write(c);
+      }
+    }
+    writer.write('"');
+
+  }
+
+  private static final class Entry {
+
+    private final String path;
+
+    private final int[] contentsMatches;
+
+    private final int[] nameMatches;
+
+    private Entry(String path, int[] contentsMatches, int[] nameMatches) {
+      this.path = path;
+      this.contentsMatches = contentsMatches;
+      this.nameMatches = nameMatches;
+    }
+
+  }
+
+}
@@ -0,0 +1,54 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+/**
+ * What file contents are processed on during file-contents replacement.
+ */
+public enum ExecutorType {
+
+  /**
+   * Everything runs on the calling thread, whatever the number of threads.
+   */
+  SEQUENTIAL("sequential"),
+
+  /**
+   * File contents run on a fixed pool of platform threads.
+   */
+  PLATFORM("platform"),
+
+  /**
+   * File contents run on a virtual thread per file, so many blocking reads and writes can wait at once.
+   * Needs Java 21 or later.
+   */
+  VIRTUAL("virtual");
+
+  private final String value;
+
+  ExecutorType(String value) {
+    this.value = value;
+  }
+
+  public String getValue() {
+    return value;
+  }
+
+  /**
+   * @return whether the running Java version supports this executor
+   */
+  public boolean isAvailable() {
+    return this != VIRTUAL || VirtualThreads.isAvailable();
+  }
+
+  /**
+   * @param value the configured value
+   * @return the matching executor, or null if there is none
+   */
+  public static ExecutorType fromValue(String value) {
+    for (ExecutorType executorType : values()) {
+      if (executorType.value.equals(value)) {
+        return executorType;
+      }
+    }
+    return null;
+  }
+
+}
@@ -0,0 +1,249 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.DosFileAttributeView;
+import java.nio.file.attribute.DosFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+
+/**
+ * The contents of a file being processed, and the replaced contents taking their place.
+ * <p>
+ * Opened files are read from disk and replaced through a temp file written next to them. Prefetched files are read
+ * into memory up front and their replaced contents are held in memory as well, until {@link #write()} writes them,
+ * so the pipeline can read, match and write on separate threads.
+ * <p>
+ * Not thread safe, but may be handed over from one thread to the next.
+ */
+final class FileContents {
+
+  /**
+   * Temp files are named with this prefix and suffix, so those left behind by an aborted execution can be told apart.
+   */
+  private static final String TEMP_FILE_PREFIX = ".find-and-replace-";
+
+  private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+  private final File file;
+
+  private final ProcessMetrics metrics;
+
+  private byte[] bytes;
+
+  private File tempFile;
+
+  private ByteArrayOutputStream replacedBytes;
+
+  private boolean replacing = false;
+
+  private FileContents(File file, byte[] bytes, ProcessMetrics metrics) {
+    this.file = file;
+    this.bytes = bytes;
+    this.metrics = metrics;
+  }
+
+  /**
+   * @return the contents of the file, read and replaced on disk
+   */
+  static FileContents open(File file, ProcessMetrics metrics) {
+    return new FileContents(file, null, metrics);
+  }
+
+  /**
+   * @return the contents of the file, read into memory now and replaced once written
+   */
+  static FileContents prefetch(File file, ProcessMetrics metrics) throws IOException {
+    return new FileContents(file, Files.readAllBytes(file.toPath()), metrics);
+  }
+
+  /**
+   * @return whether the file name is one of a temp file written next to the file it replaces
+   */
+  static boolean isTempFile(String name) {
+    return name.startsWith(TEMP_FILE_PREFIX) && name.endsWith(TEMP_FILE_SUFFIX);
+  }
+
+  File getFile() {
+    return file;
+  }
+
+  long size() {
+    return bytes != null ? bytes.length : file.length();
+  }
+
+  ReadableByteChannel openChannel() throws IOException {
+    return bytes != null ? Channels.newChannel(new ByteArrayInputStream(bytes))
+        : FileChannel.open(file.toPath(), StandardOpenOption.READ);
+  }
+
+  InputStream openStream() throws IOException {
+    return bytes != null ? new ByteArrayInputStream(bytes) : new FileInputStream(file);
+  }
+
+  /**
+   * Opens the stream receiving the replaced contents, to be either replaced or discarded once closed.
+   */
+  OutputStream openOutput() throws IOException {
+    if (bytes != null) {
+      replacedBytes = new ByteArrayOutputStream(bytes.length);
+      return replacedBytes;
+    }
+    tempFile = File.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX, file.getParentFile());
+    return new FileOutputStream(tempFile);
+  }
+
+  /**
+   * Drops the replaced contents, leaving the file untouched.
+   */
+  void discard() throws IOException {
+    replacedBytes = null;
+    if (tempFile != null && !tempFile.delete()) {
+      throw new IOException("Failed to delete temp file at: " + tempFile.getPath());
+    }
+    tempFile = null;
+  }
+
+  /**
+   * Drops the replaced contents after a failure, adding a failure to delete the temp file to it rather than
+   * hiding it.
+   */
+  void discard(Throwable failure) {
+    try {
+      discard();
+    } catch (IOException e) {
+      failure.addSuppressed(e);
+    }
+  }
+
+  /**
+   * Replaces the file with the replaced contents, right away when they were written to a temp file, otherwise
+   * once they are written.
+   */
+  void replace() throws IOException {
+    replacing = true;
+    if (tempFile != null) {
+      write();
+    }
+  }
+
+  /**
+   * Writes the replaced contents held in memory, if the file is to be replaced, and releases the contents.
+   */
+  void write() throws IOException {
+
+    bytes = null;
+    if (!replacing) {
+      replacedBytes = null;
+      return;
+    }
+    replacing = false;
+
+    try {
+      if (replacedBytes != null) {
+        tempFile = File.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX, file.getParentFile());
+        try (OutputStream out = new FileOutputStream(tempFile)) {
+          replacedBytes.writeTo(out);
+        }
+        replacedBytes = null;
+      }
+      replaceFile();
+    } catch (Throwable e) {
+      discard(e);
+      throw e;
+    }
+
+  }
+
+  /**
+   * Moves the temp file over the file in a single atomic rename where the file system supports it, so the file
+   * holds either its old or its new contents whenever the build is killed. The temp file is forced to disk before
+   * the rename, so a crash of the machine cannot leave the renamed file empty or truncated either. The file's
+   * permissions, owner and attributes are carried over to the temp file first. The temp file is kept until moved,
+   * to be discarded if the move fails.
+   * <p>
+   * A read-only DOS file cannot be replaced, so it is only made read-only again once replaced.
+   */
+  private void replaceFile() throws IOException {
+
+    long tempFileSize = tempFile.length();
+    Path target = file.toPath();
+    Path source = tempFile.toPath();
+    try (FileChannel channel = FileChannel.open(source, StandardOpenOption.WRITE)) {
+      channel.force(true);
+    }
+    boolean readOnly = copyAttributes(target, source);
+
+    if (readOnly) {
+      Files.getFileAttributeView(target, DosFileAttributeView.class).setReadOnly(false);
+    }
+    try {
+      try {
+        Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+      tempFile = null;
+    } finally {
+      if (readOnly) {
+        Files.getFileAttributeView(target, DosFileAttributeView.class).setReadOnly(true);
+      }
+    }
+
+    metrics.rewritten(tempFileSize);
+
+  }
+
+  /**
+   * @return whether the file is a read-only DOS file, which is left to the caller
+   */
+  private static boolean copyAttributes(Path from, Path to) throws IOException {
+
+    PosixFileAttributeView posixView = Files.getFileAttributeView(from, PosixFileAttributeView.class);
+    if (posixView != null) {
+      PosixFileAttributes attributes = posixView.readAttributes();
+      PosixFileAttributeView targetView = Files.getFileAttributeView(to, PosixFileAttributeView.class);
+      targetView.setPermissions(attributes.permissions());
+      try {
+        PosixFileAttributes targetAttributes = targetView.readAttributes();
+        if (!attributes.group().equals(targetAttributes.group())) {
+          targetView.setGroup(attributes.group());
+        }
+        if (!attributes.owner().equals(targetAttributes.owner())) {
+          targetView.setOwner(attributes.owner());
+        }
+      } catch (IOException e) {
+        // Only privileged users may hand a file over, the file then belongs to the current user
+      }
+      return false;
+    }
+
+    DosFileAttributeView dosView = Files.getFileAttributeView(from, DosFileAttributeView.class);
+    if (dosView != null) {
+      DosFileAttributes attributes = dosView.readAttributes();
+      DosFileAttributeView targetView = Files.getFileAttributeView(to, DosFileAttributeView.class);
+      targetView.setArchive(attributes.isArchive());
+      targetView.setHidden(attributes.isHidden());
+      targetView.setSystem(attributes.isSystem());
+      return attributes.isReadOnly();
+    }
+
+    return false;
+
+  }
+
+}
@@ -0,0 +1,353 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * Runs the file-contents work for each file on a bounded pool of worker threads.
+ * <p>
+ * Everything that touches paths (renames) and everything that logs runs on the calling thread, in the order
+ * the files were submitted, once the file's contents have been processed. This keeps the log output identical
+ * to a sequential run. The first failure cancels all outstanding work and is rethrown to the caller.
+ * <p>
+ * With a single thread or the sequential executor no pool is created and every task runs inline. With the virtual
+ * executor every file gets its own virtual thread, up to a bounded number of files in flight.
+ * <p>
+ * As a pipeline, the read, match and write stages of each file run on separate threads instead: as many readers
+ * and matchers as threads, and a single writer. Each stage takes its work from a bounded queue, and a stage finding
+ * the next queue full waits for room, so a slow stage holds back the ones before it down to the walk. The stages
+ * run on virtual threads with the virtual executor.
+ */
+class FileContentsExecutor implements AutoCloseable {
+
+  /**
+   * An IO operation that may be run on a worker or the calling thread.
+   */
+  interface IOTask {
+    void run() throws IOException;
+  }
+
+  /**
+   * The file-contents work of a file, in stages run one after the other, on the same thread unless pipelined.
+   */
+  interface ContentsTask {
+
+    /**
+     * Reads ahead what the match stage needs.
+     */
+    void read() throws IOException;
+
+    /**
+     * Matches and replaces the contents read.
+     */
+    void match() throws IOException;
+
+    /**
+     * Writes what the match stage replaced.
+     */
+    void write() throws IOException;
+
+  }
+
+  private static final int PENDING_PER_THREAD = 16;
+
+  /**
+   * Virtual threads are cheap enough to have many more files in flight, mostly waiting on IO.
+   */
+  private static final int VIRTUAL_PENDING_PER_THREAD = 256;
+
+  private final ExecutorService executorService;
+
+  private final Stage readStage;
+
+  private final Stage matchStage;
+
+  private final Stage writeStage;
+
+  private final int maxPending;
+
+  private final Deque<PendingFile> pendingFiles = new ArrayDeque<>();
+
+  /**
+   * @param executorType      what the file contents run on, virtual falling back to platform when not available
+   * @param threads           the number of worker threads, or of readers and matchers when pipelined
+   * @param pipelineQueueSize the capacity of the queue in front of each pipeline stage, or 0 not to pipeline
+   * @param metrics           receives the queue depths of the pipeline
+   */
+  FileContentsExecutor(ExecutorType executorType, int threads, int pipelineQueueSize, ProcessMetrics metrics) {
+    boolean virtual = executorType == ExecutorType.VIRTUAL && executorType.isAvailable();
+    if (executorType != ExecutorType.SEQUENTIAL && pipelineQueueSize > 0) {
+      executorService = null;
+      readStage = new Stage(threadFactory("find-and-replace-read-", virtual), threads, pipelineQueueSize,
+          metrics::readQueued, metrics);
+      matchStage = new Stage(threadFactory("find-and-replace-match-", virtual), threads, pipelineQueueSize,
+          metrics::matchQueued, metrics);
+      writeStage = new Stage(threadFactory("find-and-replace-write-", virtual), 1, pipelineQueueSize,
+          metrics::writeQueued, metrics);
+      maxPending = threads * PENDING_PER_THREAD + 3 * pipelineQueueSize;
+      metrics.pipelined();
+    } else if (virtual) {
+      executorService = VirtualThreads.newThreadPerTaskExecutor("find-and-replace-");
+      readStage = null;
+      matchStage = null;
+      writeStage = null;
+      maxPending = threads * VIRTUAL_PENDING_PER_THREAD;
+    } else if (executorType != ExecutorType.SEQUENTIAL && threads > 1) {
+      executorService = Executors.newFixedThreadPool(threads, new WorkerThreadFactory("find-and-replace-"));
+      readStage = null;
+      matchStage = null;
+      writeStage = null;
+      maxPending = threads * PENDING_PER_THREAD;
+    } else {
+      executorService = null;
+      readStage = null;
+      matchStage = null;
+      writeStage = null;
+      maxPending = 0;
+    }
+  }
+
+  /**
+   * Submits the contents task for a file. The completion task runs on the calling thread once the contents task
+   * and every previously submitted file have finished.
+   *
+   * @param contentsTask   the work to run on the pool, may be null
+   * @param completionTask the work to run on the calling thread afterwards, may be null
+   */
+  void submit(ContentsTask contentsTask, IOTask completionTask) throws IOException {
+
+    if (executorService == null && readStage == null) {
+      if (contentsTask != null) {
+        contentsTask.read();
+        contentsTask.match();
+        contentsTask.write();
+      }
+      if (completionTask != null) {
+        completionTask.run();
+      }
+      return;
+    }
+
+    Future<Void> future = null;
+    if (contentsTask != null && readStage != null) {
+      future = CompletableFuture.runAsync(unchecked(contentsTask::read), readStage)
+          .thenRunAsync(unchecked(contentsTask::match), matchStage)
+          .thenRunAsync(unchecked(contentsTask::write), writeStage);
+    } else if (contentsTask != null) {
+      future = executorService.submit(() -> {
+        contentsTask.read();
+        contentsTask.match();
+        contentsTask.write();
+        return null;
+      });
+    }
+    pendingFiles.addLast(new PendingFile(future, completionTask));
+
+    // Complete whatever is already finished, and block on the oldest file when too much work is queued up
+    while (!pendingFiles.isEmpty() && (pendingFiles.peekFirst().isDone() || pendingFiles.size() > maxPending)) {
+      completeFirst();
+    }
+
+  }
+
+  private static ThreadFactory threadFactory(String namePrefix, boolean virtual) {
+    return virtual ? VirtualThreads.factory(namePrefix) : new WorkerThreadFactory(namePrefix);
+  }
+
+  private static Runnable unchecked(IOTask task) {
+    return () -> {
+      try {
+        task.run();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    };
+  }
+
+  /**
+   * Waits for all submitted files and runs their completion tasks in submission order.
+   */
+  void awaitAll() throws IOException {
+    while (!pendingFiles.isEmpty()) {
+      completeFirst();
+    }
+  }
+
+  private void completeFirst() throws IOException {
+
+    PendingFile pendingFile = pendingFiles.removeFirst();
+
+    try {
+      pendingFile.await();
+      if (pendingFile.completionTask != null) {
+        pendingFile.completionTask.run();
+      }
+    } catch (IOException | RuntimeException e) {
+      cancelPending();
+      throw e;
+    }
+
+  }
+
+  private void cancelPending() {
+    for (PendingFile pendingFile : pendingFiles) {
+      if (pendingFile.future != null) {
+        pendingFile.future.cancel(true);
+      }
+    }
+    pendingFiles.clear();
+  }
+
+  @Override
+  public void close() {
+    cancelPending();
+    if (executorService != null) {
+      executorService.shutdownNow();
+    }
+    if (readStage != null) {
+      readStage.shutdownNow();
+      matchStage.shutdownNow();
+      writeStage.shutdownNow();
+    }
+  }
+
+  private static final class PendingFile {
+
+    private final Future<Void> future;
+
+    private final IOTask completionTask;
+
+    private PendingFile(Future<Void> future, IOTask completionTask) {
+      this.future = future;
+      this.completionTask = completionTask;
+    }
+
+    private boolean isDone() {
+      return future == null || future.isDone();
+    }
+
+    private void await() throws IOException {
+
+      if (future == null) {
+        return;
+      }
+
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while processing file contents.", e);
+      } catch (CancellationException e) {
+        throw new IOException("File contents processing was cancelled.", e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof UncheckedIOException) {
+          throw ((UncheckedIOException) cause).getCause();
+        }
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw new IOException(cause);
+      }
+
+    }
+
+  }
+
+  /**
+   * A pipeline stage: a fixed number of threads taking their work from a bounded queue. Submitting to a full queue
+   * blocks the submitting thread until there is room.
+   */
+  private static final class Stage implements Executor {
+
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    private final ThreadPoolExecutor pool;
+
+    private final IntConsumer queued;
+
+    private final ProcessMetrics metrics;
+
+    private Stage(ThreadFactory threadFactory, int threads, int queueSize, IntConsumer queued,
+                  ProcessMetrics metrics) {
+      this.pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<>(queueSize), threadFactory, this::awaitRoom);
+      this.queued = queued;
+      this.metrics = metrics;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+      pool.execute(command);
+      queued.accept(pool.getQueue().size());
+    }
+
+    private void awaitRoom(Runnable command, ThreadPoolExecutor executor) {
+
+      long startNanos = System.nanoTime();
+
+      try {
+        // Checking for shutdown now and then, as nothing takes from the queue anymore once shut down
+        while (!executor.isShutdown()) {
+          if (executor.getQueue().offer(command, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            return;
+          }
+        }
+        throw new RejectedExecutionException("File contents processing was cancelled.");
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RejectedExecutionException("Interrupted while processing file contents.", e);
+      } finally {
+        metrics.backPressure(System.nanoTime() - startNanos);
+      }
+
+    }
+
+    private void shutdownNow() {
+      pool.shutdownNow();
+    }
+
+  }
+
+  private static final class WorkerThreadFactory implements ThreadFactory {
+
+    private final String namePrefix;
+
+    private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+    private WorkerThreadFactory(String namePrefix) {
+      this.namePrefix = namePrefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, namePrefix + threadNumber.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    }
+
+  }
+
+}
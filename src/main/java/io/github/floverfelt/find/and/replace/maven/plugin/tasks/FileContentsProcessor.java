@@ -0,0 +1,341 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Applies the replacement rules to a file's contents, in order, line by line, across the whole file, or through
+ * a streaming window depending on the match scope. Every file is read and written once, whatever the number of rules.
+ * Files are read and written through {@link FileContents}, from and to disk or memory when prefetched.
+ * <p>
+ * Each file is matched by a single {@link ContentsPass}, picked by the match scope, the contents reader and the size
+ * of the file: the bytes for literals, see {@link ByteLiteralPass}, the whole contents read through nio, see
+ * {@link WholeContentsPass}, the streaming window, see {@link StreamingWindowPass}, or the lines read through a
+ * BufferedReader, see {@link ReaderLinePass}. Skipping unmatched files first runs the pass into nothing up to the
+ * first match, counting for a dry run runs it into nothing, and replacing runs it into the file.
+ * <p>
+ * Instances are shared by all worker threads of an execution. Read buffers are pooled per instance so they are
+ * reused across files but released with the execution. Only buffers of a bounded size go back to the pool, those
+ * grown for a large file or line are dropped with it.
+ */
+class FileContentsProcessor {
+
+  /**
+   * The largest file prefetched by the pipeline, larger files are read by the match stage itself.
+   */
+  private static final long MAX_PREFETCH_FILE_SIZE = 1024 * 1024;
+
+  private final Log log;
+
+  private final ProcessOptions options;
+
+  private final List<ReplacementRule> rules;
+
+  private final Charset charset;
+
+  private final boolean skipUnmatchedFiles;
+
+  private final ContentsReader contentsReader;
+
+  private final MatchScope matchScope;
+
+  private final boolean preserveLineEndings;
+
+  private final boolean literal;
+
+  private final BinaryHandling binaryHandling;
+
+  /**
+   * Whether the charset encodes text without NUL bytes, so a NUL byte marks a binary file.
+   */
+  private final boolean nulIsBinary;
+
+  /**
+   * Processes binary files with the rules matched against their bytes, or null.
+   */
+  private final FileContentsProcessor byteLevelProcessor;
+
+  private final ProcessMetrics metrics;
+
+  private final ConcurrentMap<List<ReplacementRule>, LiteralReplacer> literalReplacers = new ConcurrentHashMap<>();
+
+  private final ConcurrentMap<List<ReplacementRule>, LiteralPrefilter> prefilters = new ConcurrentHashMap<>();
+
+  /**
+   * Whether the literals are replaced on the bytes rather than the decoded chars.
+   */
+  private final boolean byteLevel;
+
+  private final ConcurrentMap<List<ReplacementRule>, ByteLiteralReplacer> byteLiteralReplacers =
+      new ConcurrentHashMap<>();
+
+  private final Queue<ReadBuffers> readBuffersPool = new ConcurrentLinkedQueue<>();
+
+  /**
+   * The files read whole by all workers, see {@link WholeContentsPass}.
+   */
+  private final MemoryBudget memoryBudget;
+
+  FileContentsProcessor(Log log, ProcessOptions options, ProcessMetrics metrics) {
+    this.log = log;
+    this.options = options;
+    this.rules = options.getRules();
+    this.charset = options.getCharset();
+    this.skipUnmatchedFiles = options.isSkipUnmatchedFiles();
+    this.contentsReader = options.getContentsReader();
+    this.matchScope = options.getMatchScope();
+    this.preserveLineEndings = options.isPreserveLineEndings();
+    this.literal = options.isLiteral();
+    this.binaryHandling = options.getBinaryHandling();
+    this.nulIsBinary = "a".getBytes(charset).length == 1;
+    this.metrics = metrics;
+    this.memoryBudget = new MemoryBudget(options.getMaxInMemorySize(), metrics);
+
+    // Within the line match scope literals holding a line terminator never match, on the bytes they would
+    this.byteLevel = literal && contentsReader == ContentsReader.NIO && ByteLiteralReplacer.supports(charset)
+        && ByteLiteralReplacer.canEncode(rules, charset)
+        && (matchScope != MatchScope.LINE || !holdsLineTerminator(rules));
+
+    // Bytes read as ISO-8859-1 map one to one to chars, so any byte sequence is written back unchanged
+    if (binaryHandling == BinaryHandling.BYTE_LEVEL_REPLACE) {
+      List<ReplacementRule> byteLevelRules = new ArrayList<>(rules.size());
+      for (ReplacementRule rule : rules) {
+        byteLevelRules.add(rule.toByteLevel(charset));
+      }
+      byteLevelProcessor = new FileContentsProcessor(log, options.toBuilder()
+          .rules(byteLevelRules)
+          .charset(StandardCharsets.ISO_8859_1)
+          .contentsReader(ContentsReader.NIO)
+          .matchScope(MatchScope.STREAMING_WINDOW)
+          .preserveLineEndings(false)
+          .binaryHandling(null)
+          .build(), metrics);
+    } else {
+      byteLevelProcessor = null;
+    }
+  }
+
+  /**
+   * @return the contents of the file, read and replaced on disk
+   */
+  FileContents open(File file) {
+    return FileContents.open(file, metrics);
+  }
+
+  /**
+   * Reads a file ahead of processing when the rules apply to it and it is small enough to be held in memory, its
+   * replaced contents are then held in memory as well until written.
+   *
+   * @return the contents of the file
+   */
+  FileContents prefetch(File file) throws IOException {
+
+    for (ReplacementRule rule : rules) {
+      if (rule.appliesTo(file)) {
+        return file.length() <= MAX_PREFETCH_FILE_SIZE ? FileContents.prefetch(file, metrics) : open(file);
+      }
+    }
+
+    return open(file);
+
+  }
+
+  void process(FileContents fileContents) throws IOException {
+
+    List<ReplacementRule> fileRules = fileRules(fileContents.getFile());
+    if (fileRules.isEmpty()) {
+      return;
+    }
+
+    ReadBuffers readBuffers = borrowReadBuffers();
+
+    try {
+      if (binaryHandling != null && isBinary(fileContents, readBuffers)) {
+        if (byteLevelProcessor != null) {
+          byteLevelProcessor.process(fileContents);
+        }
+        return;
+      }
+
+      long startNanos = System.nanoTime();
+      long fileBytes = fileContents.size();
+
+      try {
+        try (ContentsPass pass = open(fileContents, fileRules, readBuffers)) {
+          // A file without a match is read up to its end once, and never written
+          if (!skipUnmatchedFiles || pass.run(null, new int[fileRules.size()], true)) {
+            int[] fileCounts = new int[fileRules.size()];
+            try (OutputStream out = fileContents.openOutput()) {
+              pass.run(out, fileCounts, false);
+            }
+            fileContents.replace();
+            for (int count : fileCounts) {
+              metrics.matched(count);
+            }
+          }
+        }
+      } catch (Throwable e) {
+        // Whatever was written so far is dropped, rather than left behind as a temp file next to the file
+        fileContents.discard(e);
+        throw e;
+      }
+
+      metrics.processed(fileBytes, System.nanoTime() - startNanos);
+    } finally {
+      release(readBuffers);
+    }
+
+  }
+
+  /**
+   * Counts the matches of every rule in the file the way {@link #process} replaces them, without writing anything.
+   * A rule replacing only its first match counts one match at most.
+   *
+   * @return the number of matches, indexed like the rules
+   */
+  int[] countMatches(FileContents fileContents) throws IOException {
+
+    int[] counts = new int[rules.size()];
+    List<ReplacementRule> fileRules = fileRules(fileContents.getFile());
+    if (fileRules.isEmpty()) {
+      return counts;
+    }
+
+    ReadBuffers readBuffers = borrowReadBuffers();
+
+    try {
+      if (binaryHandling != null && isBinary(fileContents, readBuffers)) {
+        return byteLevelProcessor != null ? byteLevelProcessor.countMatches(fileContents) : counts;
+      }
+
+      long startNanos = System.nanoTime();
+      int[] fileCounts = new int[fileRules.size()];
+      try (ContentsPass pass = open(fileContents, fileRules, readBuffers)) {
+        pass.run(null, fileCounts, false);
+      }
+
+      for (int i = 0, rule = 0; i < fileRules.size(); i++) {
+        while (rules.get(rule) != fileRules.get(i)) {
+          rule++;
+        }
+        counts[rule] = fileCounts[i];
+        metrics.matched(fileCounts[i]);
+      }
+
+      metrics.processed(fileContents.size(), System.nanoTime() - startNanos);
+    } finally {
+      release(readBuffers);
+    }
+
+    return counts;
+
+  }
+
+  private List<ReplacementRule> fileRules(File file) {
+    List<ReplacementRule> fileRules = new ArrayList<>(rules.size());
+    for (ReplacementRule rule : rules) {
+      if (rule.appliesTo(file)) {
+        fileRules.add(rule);
+      }
+    }
+    return fileRules;
+  }
+
+  /**
+   * Picks the pass matching the file: literals on the bytes where the charset allows it, then the whole contents
+   * read through nio while they fit in the memory budget, then the streaming window, or the lines read through
+   * a BufferedReader with the line match scope.
+   */
+  private ContentsPass open(FileContents fileContents, List<ReplacementRule> fileRules, ReadBuffers readBuffers)
+      throws IOException {
+
+    if (byteLevel) {
+      ByteLiteralReplacer byteReplacer = byteLiteralReplacers.computeIfAbsent(fileRules,
+          byteRules -> new ByteLiteralReplacer(byteRules, charset));
+      return new ByteLiteralPass(fileContents, byteReplacer, matchScope == MatchScope.LINE && !preserveLineEndings);
+    }
+
+    // Files with the same rules share one automaton, usually all files do
+    LiteralReplacer literalReplacer = literal
+        ? literalReplacers.computeIfAbsent(fileRules, LiteralReplacer::new) : null;
+    LiteralPrefilter prefilter = literal ? null
+        : prefilters.computeIfAbsent(fileRules, regexRules -> LiteralPrefilter.of(regexRules, charset));
+
+    if (matchScope == MatchScope.FILE || matchScope == MatchScope.LINE && contentsReader == ContentsReader.NIO) {
+      ContentsPass pass = WholeContentsPass.open(fileContents, fileRules, literalReplacer, prefilter, options,
+          readBuffers, memoryBudget);
+      if (pass != null) {
+        return pass;
+      }
+    }
+
+    if (matchScope == MatchScope.LINE) {
+      return new ReaderLinePass(fileContents, fileRules, literalReplacer, prefilter, options, readBuffers.lineBuffers);
+    }
+    return new StreamingWindowPass(fileContents, fileRules, literalReplacer, options);
+
+  }
+
+  private static boolean holdsLineTerminator(List<ReplacementRule> rules) {
+    for (ReplacementRule rule : rules) {
+      String term = rule.getFindRegex().pattern();
+      if (term.indexOf('\n') >= 0 || term.indexOf('\r') >= 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Sniffs the first bytes of the file, failing if binary files are not allowed. Skipped binary files are listed
+   * in the debug log, while a file the charset cannot decode is warned about, as it is more likely a text file
+   * written in another encoding than a binary file.
+   *
+   * @return whether the file is binary
+   */
+  private boolean isBinary(FileContents fileContents, ReadBuffers readBuffers) throws IOException {
+
+    ReadBuffers.Sniffed sniffed = readBuffers.sniff(fileContents, nulIsBinary);
+    if (sniffed == ReadBuffers.Sniffed.TEXT) {
+      return false;
+    }
+
+    metrics.binary();
+    String path = fileContents.getFile().getPath();
+    if (binaryHandling == BinaryHandling.FAIL) {
+      throw new IOException("Binary file found, set binaryHandling to skip or byte-level-replace to allow it: "
+          + path);
+    }
+
+    if (binaryHandling == BinaryHandling.SKIP && sniffed == ReadBuffers.Sniffed.MALFORMED) {
+      log.warn(String.format("Skipping %s, its first bytes are not valid %s. Set the encoding it is written in, "
+          + "or binaryHandling to byte-level-replace.", path, charset.name()));
+    } else if (binaryHandling == BinaryHandling.SKIP) {
+      log.debug("Skipping binary file " + path);
+    }
+    return true;
+
+  }
+
+  private ReadBuffers borrowReadBuffers() {
+    ReadBuffers readBuffers = readBuffersPool.poll();
+    return readBuffers != null ? readBuffers : new ReadBuffers(charset);
+  }
+
+  private void release(ReadBuffers readBuffers) {
+    readBuffers.shrink();
+    readBuffersPool.offer(readBuffers);
+  }
+
+}
@@ -0,0 +1,221 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A persistent index of the files whose contents were processed by a previous execution.
+ * <p>
+ * Each entry holds the size, modification time and content hash of a file as it was left by the execution.
+ * Files matching their entry are skipped. The index is discarded when the options it was written with differ.
+ * <p>
+ * Lookups and updates are safe from worker threads.
+ */
+public class FingerprintIndex {
+
+  private static final String OPTIONS_PREFIX = "# options ";
+
+  private final Path indexFile;
+
+  private final Path baseDir;
+
+  private final String optionsHash;
+
+  private final Map<String, Fingerprint> previous;
+
+  private final Map<String, Fingerprint> current = new ConcurrentHashMap<>();
+
+  private FingerprintIndex(Path indexFile, Path baseDir, String optionsHash, Map<String, Fingerprint> previous) {
+    this.indexFile = indexFile;
+    this.baseDir = baseDir.toAbsolutePath().normalize();
+    this.optionsHash = optionsHash;
+    this.previous = previous;
+  }
+
+  /**
+   * Loads the index, or starts an empty one if it does not exist or was written with different options.
+   *
+   * @param indexFile   where the index is stored
+   * @param baseDir     the directory entries are relative to
+   * @param optionsHash a hash of every option that affects the processed contents
+   * @return the index
+   */
+  public static FingerprintIndex load(Path indexFile, Path baseDir, String optionsHash) throws IOException {
+
+    Map<String, Fingerprint> previous = new ConcurrentHashMap<>();
+
+    if (Files.isRegularFile(indexFile)) {
+      try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+        if ((OPTIONS_PREFIX + optionsHash).equals(reader.readLine())) {
+          for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            String[] fields = line.split("\t", 4);
+            if (fields.length == 4) {
+              previous.put(fields[3], new Fingerprint(Long.parseLong(fields[0]), Long.parseLong(fields[1]), fields[2]));
+            }
+          }
+        }
+      } catch (NumberFormatException e) {
+        previous.clear();
+      }
+    }
+
+    return new FingerprintIndex(indexFile, baseDir, optionsHash, previous);
+
+  }
+
+  /**
+   * @return the number of entries loaded from the previous execution
+   */
+  public int previousSize() {
+    return previous.size();
+  }
+
+  /**
+   * Checks a file against its entry. Unchanged files are carried over into the saved index.
+   *
+   * @param file the file to check
+   * @return whether the file is exactly as the previous execution left it
+   */
+  boolean isUnchanged(File file) throws IOException {
+
+    String key = key(file);
+    Fingerprint fingerprint = previous.get(key);
+    if (fingerprint == null) {
+      return false;
+    }
+
+    BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+    if (attributes.size() != fingerprint.size) {
+      return false;
+    }
+
+    // Only touched files need their contents hashed
+    long lastModified = attributes.lastModifiedTime().toMillis();
+    if (lastModified != fingerprint.lastModified) {
+      if (!hash(file.toPath()).equals(fingerprint.hash)) {
+        return false;
+      }
+      fingerprint = new Fingerprint(fingerprint.size, lastModified, fingerprint.hash);
+    }
+
+    current.put(key, fingerprint);
+    return true;
+
+  }
+
+  /**
+   * Records a file as it was left after processing its contents.
+   *
+   * @param file the processed file
+   */
+  void update(File file) throws IOException {
+    BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+    current.put(key(file), new Fingerprint(attributes.size(), attributes.lastModifiedTime().toMillis(),
+        hash(file.toPath())));
+  }
+
+  /**
+   * Moves the entry of a renamed file.
+   *
+   * @param from the file before the rename
+   * @param to   the file after the rename
+   */
+  void moved(File from, File to) {
+    Fingerprint fingerprint = current.remove(key(from));
+    if (fingerprint != null) {
+      current.put(key(to), fingerprint);
+    }
+  }
+
+  /**
+   * Writes the entries of every file checked or processed by this execution.
+   */
+  public void save() throws IOException {
+
+    Files.createDirectories(indexFile.getParent());
+
+    try (BufferedWriter writer = Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8)) {
+      writer.write(OPTIONS_PREFIX + optionsHash);
+      writer.newLine();
+      for (Map.Entry<String, Fingerprint> entry : new TreeMap<>(current).entrySet()) {
+        Fingerprint fingerprint = entry.getValue();
+        writer.write(fingerprint.size + "\t" + fingerprint.lastModified + "\t" + fingerprint.hash + "\t" + entry.getKey());
+        writer.newLine();
+      }
+    }
+
+  }
+
+  /**
+   * @param value the value to hash
+   * @return the hex encoded SHA-256 of the value
+   */
+  public static String hash(String value) {
+    MessageDigest digest = newDigest();
+    return toHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private static String hash(Path path) throws IOException {
+
+    MessageDigest digest = newDigest();
+    byte[] buffer = new byte[64 * 1024];
+
+    try (InputStream inputStream = Files.newInputStream(path)) {
+      for (int read = inputStream.read(buffer); read != -1; read = inputStream.read(buffer)) {
+        digest.update(buffer, 0, read);
+      }
+    }
+
+    return toHex(digest.digest());
+
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available.", e);
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder sb = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return sb.toString();
+  }
+
+  private String key(File file) {
+    return baseDir.relativize(file.toPath().toAbsolutePath().normalize()).toString();
+  }
+
+  private static final class Fingerprint {
+
+    private final long size;
+
+    private final long lastModified;
+
+    private final String hash;
+
+    private Fingerprint(long size, long lastModified, String hash) {
+      this.size = size;
+      this.lastModified = lastModified;
+      this.hash = hash;
+    }
+
+  }
+
+}
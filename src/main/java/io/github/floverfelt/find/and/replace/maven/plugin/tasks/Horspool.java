@@ -0,0 +1,101 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+/**
+ * Boyer-Moore-Horspool search of a single literal, over chars or bytes.
+ * <p>
+ * The shift table is indexed by the low byte of each char, so chars sharing it share the smallest shift. Mostly
+ * ASCII input still skips ahead by up to the literal length on every mismatch.
+ * <p>
+ * Immutable and thread safe.
+ */
+final class Horspool {
+
+  private final char[] chars;
+
+  private final byte[] bytes;
+
+  private final int length;
+
+  private final int[] shifts = new int[256];
+
+  /**
+   * @param literal the non-empty literal to find among chars
+   */
+  Horspool(String literal) {
+    this(literal.toCharArray(), null, literal.length());
+  }
+
+  /**
+   * @param literal the non-empty literal to find among bytes
+   */
+  Horspool(byte[] literal) {
+    this(null, literal.clone(), literal.length);
+  }
+
+  private Horspool(char[] chars, byte[] bytes, int length) {
+
+    this.chars = chars;
+    this.bytes = bytes;
+    this.length = length;
+
+    for (int i = 0; i < shifts.length; i++) {
+      shifts[i] = length;
+    }
+    // The last position is left out, a match there shifts by the full distance to the previous occurrence
+    for (int j = 0; j < length - 1; j++) {
+      shifts[(chars != null ? chars[j] : bytes[j]) & 0xff] = length - 1 - j;
+    }
+
+  }
+
+  int length() {
+    return length;
+  }
+
+  /**
+   * @return the index of the first occurrence within the region, or -1
+   */
+  int indexOf(char[] text, int from, int to) {
+
+    int last = length - 1;
+
+    for (int i = from + last; i < to; i += shifts[text[i] & 0xff]) {
+      int j = last;
+      int k = i;
+      while (text[k] == chars[j]) {
+        if (j == 0) {
+          return k;
+        }
+        j--;
+        k--;
+      }
+    }
+
+    return -1;
+
+  }
+
+  /**
+   * @return the index of the first occurrence within the region, or -1
+   */
+  int indexOf(byte[] text, int from, int to) {
+
+    int last = length - 1;
+
+    for (int i = from + last; i < to; i += shifts[text[i] & 0xff]) {
+      int j = last;
+      int k = i;
+      while (text[k] == bytes[j]) {
+        if (j == 0) {
+          return k;
+        }
+        j--;
+        k--;
+      }
+    }
+
+    return -1;
+
+  }
+
+}
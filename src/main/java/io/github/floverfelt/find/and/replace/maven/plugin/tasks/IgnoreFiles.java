@@ -0,0 +1,379 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The .gitignore and .ignore files of the directories being walked, telling which paths git ignores.
+ * <p>
+ * Every directory is a level holding the patterns of its own ignore files, .ignore ones taking precedence over
+ * .gitignore ones. The levels above baseDir up to the repository root are loaded first, lowest of all the
+ * .git/info/exclude file, and a level is entered and exited as the walk enters and leaves its directory. A path is
+ * checked against the deepest level first, and the last pattern of a level matching it decides, so ! patterns
+ * re-include what an earlier or shallower pattern ignored. .git directories are always ignored.
+ * <p>
+ * The patterns of a level are compiled into a single regex, one alternative each in reverse order, so the first
+ * alternative matching is the last pattern, and a path is checked against a level in a single pass whatever the
+ * number of patterns.
+ * <p>
+ * Paths are relative to baseDir with / separators, like for {@link PathFilter}. Not thread safe, it follows a single
+ * walk.
+ */
+final class IgnoreFiles {
+
+  private static final String[] FILE_NAMES = {".gitignore", ".ignore"};
+
+  private final List<Level> levels = new ArrayList<>();
+
+  private IgnoreFiles() {
+  }
+
+  /**
+   * @param baseDir the directory the walk starts in, which is entered as any other
+   * @return the ignore files, holding the levels above baseDir
+   * @throws IOException if an ignore file cannot be read
+   */
+  static IgnoreFiles load(Path baseDir) throws IOException {
+
+    IgnoreFiles ignoreFiles = new IgnoreFiles();
+    Path base = baseDir.toAbsolutePath().normalize();
+
+    Path repositoryRoot = base;
+    while (repositoryRoot != null && !Files.exists(repositoryRoot.resolve(".git"))) {
+      repositoryRoot = repositoryRoot.getParent();
+    }
+    if (repositoryRoot == null) {
+      return ignoreFiles;
+    }
+
+    String prefix = prefix(repositoryRoot, base);
+    Path exclude = repositoryRoot.resolve(".git").resolve("info").resolve("exclude");
+    if (Files.isRegularFile(exclude)) {
+      ignoreFiles.levels.add(Level.compile(readLines(exclude), 0, prefix));
+    }
+
+    for (Path dir = repositoryRoot; !dir.equals(base); dir = dir.resolve(base.getName(dir.getNameCount()))) {
+      ignoreFiles.levels.add(Level.compile(readIgnoreFiles(dir), 0, prefix(dir, base)));
+    }
+
+    return ignoreFiles;
+
+  }
+
+  /**
+   * @return the path of baseDir relative to the directory followed by /, or empty for baseDir itself
+   */
+  private static String prefix(Path dir, Path base) {
+    String relative = dir.relativize(base).toString().replace(File.separatorChar, '/');
+    return relative.isEmpty() ? "" : relative + "/";
+  }
+
+  /**
+   * Enters a directory, making the patterns of its ignore files apply beneath it.
+   *
+   * @param dir          the directory
+   * @param relativePath the directory's path relative to baseDir, empty for baseDir
+   * @throws IOException if an ignore file cannot be read
+   */
+  void enter(Path dir, String relativePath) throws IOException {
+    levels.add(Level.compile(readIgnoreFiles(dir), relativePath.isEmpty() ? 0 : relativePath.length() + 1, ""));
+  }
+
+  /**
+   * Exits the directory entered last.
+   */
+  void exit() {
+    levels.remove(levels.size() - 1);
+  }
+
+  /**
+   * @param relativePath the path relative to baseDir, beneath the directory entered last
+   * @param isDirectory  whether the path is a directory, which directory-only patterns also match
+   * @return whether git ignores the path
+   */
+  boolean isIgnored(String relativePath, boolean isDirectory) {
+
+    if (isDirectory && relativePath.substring(relativePath.lastIndexOf('/') + 1).equals(".git")) {
+      return true;
+    }
+
+    for (int i = levels.size() - 1; i >= 0; i--) {
+      Level level = levels.get(i);
+      int match = level == null ? Level.NO_MATCH : level.match(relativePath, isDirectory);
+      if (match != Level.NO_MATCH) {
+        return match == Level.IGNORED;
+      }
+    }
+
+    return false;
+
+  }
+
+  /**
+   * @return the lines of the directory's ignore files, .ignore ones last
+   */
+  private static List<String> readIgnoreFiles(Path dir) throws IOException {
+    List<String> lines = new ArrayList<>();
+    for (String fileName : FILE_NAMES) {
+      Path file = dir.resolve(fileName);
+      if (Files.isRegularFile(file)) {
+        lines.addAll(readLines(file));
+      }
+    }
+    return lines;
+  }
+
+  private static List<String> readLines(Path file) throws IOException {
+    List<String> lines = new ArrayList<>();
+    // Malformed bytes are replaced rather than failing the walk, they only end up in literals
+    for (String line : new String(Files.readAllBytes(file), StandardCharsets.UTF_8).split("\n")) {
+      lines.add(line.endsWith("\r") ? line.substring(0, line.length() - 1) : line);
+    }
+    return lines;
+  }
+
+  /**
+   * The patterns of one directory, compiled into a regex over files and one over directories.
+   */
+  private static final class Level {
+
+    private static final int NO_MATCH = 0;
+
+    private static final int IGNORED = 1;
+
+    private static final int INCLUDED = 2;
+
+    /**
+     * The chars the paths relative to baseDir start with before they are relative to the directory.
+     */
+    private final int skip;
+
+    /**
+     * What the paths relative to baseDir are prefixed with to be relative to a directory above baseDir.
+     */
+    private final String prefix;
+
+    private final Matcher files;
+
+    private final boolean[] filesNegated;
+
+    private final Matcher directories;
+
+    private final boolean[] directoriesNegated;
+
+    private Level(int skip, String prefix, Matcher files, boolean[] filesNegated, Matcher directories,
+                  boolean[] directoriesNegated) {
+      this.skip = skip;
+      this.prefix = prefix;
+      this.files = files;
+      this.filesNegated = filesNegated;
+      this.directories = directories;
+      this.directoriesNegated = directoriesNegated;
+    }
+
+    /**
+     * @return the compiled level, or null if the lines hold no pattern
+     */
+    private static Level compile(List<String> lines, int skip, String prefix) {
+
+      List<String> fileRegexes = new ArrayList<>();
+      List<Boolean> fileNegations = new ArrayList<>();
+      List<String> directoryRegexes = new ArrayList<>();
+      List<Boolean> directoryNegations = new ArrayList<>();
+
+      for (String line : lines) {
+
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        // Trailing spaces are dropped unless escaped
+        int end = line.length();
+        while (end > 0 && line.charAt(end - 1) == ' ' && (end < 2 || line.charAt(end - 2) != '\\')) {
+          end--;
+        }
+        String pattern = line.substring(0, end);
+
+        boolean negated = pattern.startsWith("!");
+        if (negated) {
+          pattern = pattern.substring(1);
+        }
+        boolean directoryOnly = pattern.endsWith("/");
+        if (directoryOnly) {
+          pattern = pattern.substring(0, pattern.length() - 1);
+        }
+        if (pattern.isEmpty()) {
+          continue;
+        }
+
+        // A pattern with a / before its end is relative to the directory, any other matches a name at any depth
+        boolean anchored = pattern.indexOf('/') >= 0;
+        String regex = anchored ? toRegex(pattern.startsWith("/") ? pattern.substring(1) : pattern)
+            : "(?:.*/)?" + toRegex(pattern);
+
+        directoryRegexes.add(0, regex);
+        directoryNegations.add(0, negated);
+        if (!directoryOnly) {
+          fileRegexes.add(0, regex);
+          fileNegations.add(0, negated);
+        }
+
+      }
+
+      if (directoryRegexes.isEmpty()) {
+        return null;
+      }
+      return new Level(skip, prefix, matcher(fileRegexes), toArray(fileNegations), matcher(directoryRegexes),
+          toArray(directoryNegations));
+
+    }
+
+    private static Matcher matcher(List<String> regexes) {
+      if (regexes.isEmpty()) {
+        return null;
+      }
+      StringBuilder combined = new StringBuilder();
+      for (String regex : regexes) {
+        combined.append(combined.length() == 0 ? "(" : "|(").append(regex).append(')');
+      }
+      return PatternCache.compile(combined.toString()).matcher("");
+    }
+
+    private static boolean[] toArray(List<Boolean> negations) {
+      boolean[] negated = new boolean[negations.size()];
+      for (int i = 0; i < negated.length; i++) {
+        negated[i] = negations.get(i);
+      }
+      return negated;
+    }
+
+    /**
+     * @return {@link #IGNORED} or {@link #INCLUDED} from the last pattern matching the path, or {@link #NO_MATCH}
+     */
+    private int match(String relativePath, boolean isDirectory) {
+
+      Matcher matcher = isDirectory ? directories : files;
+      if (matcher == null) {
+        return NO_MATCH;
+      }
+
+      String path = skip > 0 ? relativePath.substring(skip) : relativePath;
+      if (!matcher.reset(prefix.isEmpty() ? path : prefix + path).matches()) {
+        return NO_MATCH;
+      }
+
+      boolean[] negated = isDirectory ? directoriesNegated : filesNegated;
+      for (int group = 1; group <= negated.length; group++) {
+        if (matcher.start(group) >= 0) {
+          return negated[group - 1] ? INCLUDED : IGNORED;
+        }
+      }
+      return NO_MATCH;
+
+    }
+
+    /**
+     * Translates a pattern as git's wildmatch does: * and ? never match /, [...] matches a char of a class, **&#47;
+     * any leading directories, /** anything beneath and /**&#47; any directories in between. A backslash escapes
+     * the next char. Only non-capturing groups are used, the caller numbers the patterns by their group.
+     */
+    private static String toRegex(String pattern) {
+
+      StringBuilder regex = new StringBuilder();
+      StringBuilder literal = new StringBuilder();
+
+      for (int i = 0; i < pattern.length(); i++) {
+        char c = pattern.charAt(i);
+        String wildcard;
+        if (c == '\\' && i + 1 < pattern.length()) {
+          literal.append(pattern.charAt(++i));
+          continue;
+        } else if (pattern.startsWith("**", i) && (i == 0 || pattern.charAt(i - 1) == '/')
+            && (i + 2 == pattern.length() || pattern.charAt(i + 2) == '/')) {
+          boolean last = i + 2 == pattern.length();
+          wildcard = last ? ".*" : "(?:.*/)?";
+          i += last ? 1 : 2;
+        } else if (c == '*') {
+          wildcard = "[^/]*";
+        } else if (c == '?') {
+          wildcard = "[^/]";
+        } else if (c == '[' && classEnd(pattern, i) > 0) {
+          int end = classEnd(pattern, i);
+          wildcard = toClass(pattern.substring(i + 1, end));
+          i = end;
+        } else {
+          literal.append(c);
+          continue;
+        }
+        if (literal.length() > 0) {
+          regex.append(Pattern.quote(literal.toString()));
+          literal.setLength(0);
+        }
+        regex.append(wildcard);
+      }
+
+      if (literal.length() > 0) {
+        regex.append(Pattern.quote(literal.toString()));
+      }
+      return regex.toString();
+
+    }
+
+    /**
+     * @return the index of the ] closing the class starting at i, or -1 if it is not closed
+     */
+    private static int classEnd(String pattern, int i) {
+      int j = i + 1;
+      if (j < pattern.length() && (pattern.charAt(j) == '!' || pattern.charAt(j) == '^')) {
+        j++;
+      }
+      // A ] right after the opening bracket is a char of the class
+      if (j < pattern.length() && pattern.charAt(j) == ']') {
+        j++;
+      }
+      for (; j < pattern.length(); j++) {
+        if (pattern.charAt(j) == '\\') {
+          j++;
+        } else if (pattern.charAt(j) == ']') {
+          return j;
+        }
+      }
+      return -1;
+    }
+
+    private static String toClass(String chars) {
+
+      StringBuilder regex = new StringBuilder("(?:(?!/)[");
+      int first = 0;
+      if (chars.startsWith("!") || chars.startsWith("^")) {
+        regex.append('^');
+        first++;
+      }
+
+      for (int i = first; i < chars.length(); i++) {
+        char c = chars.charAt(i);
+        if (c == '\\' && i + 1 < chars.length()) {
+          c = chars.charAt(++i);
+        } else if (c == '-' && i > first && i + 1 < chars.length()) {
+          regex.append('-');
+          continue;
+        }
+        if (!Character.isLetterOrDigit(c)) {
+          regex.append('\\');
+        }
+        regex.append(c);
+      }
+
+      return regex.append("])").toString();
+
+    }
+
+  }
+
+}
@@ -0,0 +1,148 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+
+/**
+ * The state recycled from line to line and file to file to replace lines: a view of the line, the matchers of the
+ * rules, two buffers the rules replace into in turn, the chunk replaced lines are written out through, and the
+ * window lines are streamed through.
+ * <p>
+ * Not thread safe, borrowed along with the read buffers holding it.
+ */
+final class LineBuffers {
+
+  private static final int WRITE_CHUNK_SIZE = 8 * 1024;
+
+  final CharsView line = new CharsView();
+
+  final AhoCorasick.Match match = new AhoCorasick.Match();
+
+  private List<ReplacementRule> matcherRules = new ArrayList<>();
+
+  private Matcher[] matchers = new Matcher[0];
+
+  private final StringBuilder replaced = new StringBuilder();
+
+  private final StringBuilder replacing = new StringBuilder();
+
+  private final char[] replacedChars = new char[WRITE_CHUNK_SIZE];
+
+  private char[] window = new char[0];
+
+  /**
+   * Files mostly share the same rules, the matchers are only created anew when they do not.
+   *
+   * @return the matchers of the rules, to be reset to each line and replaced line
+   */
+  Matcher[] matchers(List<ReplacementRule> rules) {
+    if (!rules.equals(matcherRules)) {
+      matchers = new Matcher[rules.size()];
+      for (int i = 0; i < rules.size(); i++) {
+        matchers[i] = rules.get(i).getFindRegex().matcher("");
+      }
+      matcherRules = rules;
+    }
+    return matchers;
+  }
+
+  /**
+   * @return the cleared buffer not holding the line, to replace it into
+   */
+  StringBuilder otherBuffer(CharSequence line) {
+    StringBuilder buffer = line == replaced ? replacing : replaced;
+    buffer.setLength(0);
+    return buffer;
+  }
+
+  /**
+   * Writes a region of the line, or of a buffer it was replaced into, in chunks through a recycled array, as writing
+   * a StringBuilder to a Writer would copy it to a String.
+   */
+  void write(Writer out, CharSequence line, int start, int end) throws IOException {
+    if (line == this.line) {
+      this.line.write(out, start, end);
+      return;
+    }
+    for (int from = start; from < end; from += replacedChars.length) {
+      int to = Math.min(end, from + replacedChars.length);
+      ((StringBuilder) line).getChars(from, to, replacedChars, 0);
+      out.write(replacedChars, 0, to - from);
+    }
+  }
+
+  /**
+   * Drops the buffers grown beyond {@link ReadBuffers#MAX_POOLED_BUFFER_SIZE} by a long line.
+   */
+  void shrink() {
+    if (replaced.capacity() > ReadBuffers.MAX_POOLED_BUFFER_SIZE) {
+      replaced.setLength(0);
+      replaced.trimToSize();
+    }
+    if (replacing.capacity() > ReadBuffers.MAX_POOLED_BUFFER_SIZE) {
+      replacing.setLength(0);
+      replacing.trimToSize();
+    }
+    if (window.length > ReadBuffers.MAX_POOLED_BUFFER_SIZE) {
+      window = new char[0];
+    }
+  }
+
+  /**
+   * @return the window, only read from as far as it was read into for the current file
+   */
+  char[] window(int size) {
+    if (window.length != size) {
+      window = new char[size];
+    }
+    return window;
+  }
+
+  /**
+   * A view of a region of a char array, wrapped around each line in turn instead of allocating a new one.
+   */
+  static final class CharsView implements CharSequence {
+
+    private char[] chars;
+
+    private int offset;
+
+    private int length;
+
+    CharsView wrap(char[] chars, int start, int end) {
+      this.chars = chars;
+      this.offset = start;
+      this.length = end - start;
+      return this;
+    }
+
+    void write(Writer out, int start, int end) throws IOException {
+      out.write(chars, offset + start, end - start);
+    }
+
+    @Override
+    public int length() {
+      return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+      return chars[offset + index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      return new String(chars, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+      return new String(chars, offset, length);
+    }
+
+  }
+
+}
@@ -0,0 +1,408 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Tells apart the input a set of regex rules cannot match, from the literal every match of each rule must contain.
+ * <p>
+ * When the input holds none of the literals no rule matches, and as every rule then leaves it unchanged no later
+ * rule matches either. The regex engine only has to run on the input holding one of them. A rule without such a
+ * literal may match anything, and so does the prefilter of any set of rules holding one.
+ * <p>
+ * The literals are searched with Boyer-Moore-Horspool among the decoded chars, and among the raw bytes for charsets
+ * whose encoded literals can be matched on the bytes, see {@link ByteLiteralReplacer#supports(Charset)}.
+ * <p>
+ * Immutable and thread safe.
+ */
+final class LiteralPrefilter {
+
+  /**
+   * Shorter literals hardly skip anything, the regex engine finds a single char as fast.
+   */
+  private static final int MIN_LITERAL_LENGTH = 2;
+
+  private static final String FLAGS = "idmsuxU-";
+
+  private final Horspool[] charSearches;
+
+  private final Horspool[] byteSearches;
+
+  private LiteralPrefilter(Horspool[] charSearches, Horspool[] byteSearches) {
+    this.charSearches = charSearches;
+    this.byteSearches = byteSearches;
+  }
+
+  /**
+   * @param rules   the regex rules, in order
+   * @param charset the charset of the contents
+   * @return the prefilter of the rules, letting everything through if any rule has no required literal
+   */
+  static LiteralPrefilter of(List<ReplacementRule> rules, Charset charset) {
+
+    Horspool[] charSearches = new Horspool[rules.size()];
+    Horspool[] byteSearches = ByteLiteralReplacer.supports(charset) ? new Horspool[rules.size()] : null;
+
+    for (int i = 0; i < rules.size(); i++) {
+      String literal = rules.get(i).getRequiredLiteral();
+      if (literal == null) {
+        return new LiteralPrefilter(null, null);
+      }
+      charSearches[i] = new Horspool(literal);
+      // Malformed input decodes to the replacement char, which is not in the bytes
+      if (byteSearches != null && (!charset.newEncoder().canEncode(literal) || literal.indexOf('\uFFFD') >= 0)) {
+        byteSearches = null;
+      } else if (byteSearches != null) {
+        byteSearches[i] = new Horspool(literal.getBytes(charset));
+      }
+    }
+
+    return new LiteralPrefilter(charSearches, byteSearches);
+
+  }
+
+  /**
+   * @return whether some input may be skipped at all
+   */
+  boolean isActive() {
+    return charSearches != null;
+  }
+
+  /**
+   * @return whether the raw bytes can be searched
+   */
+  boolean searchesBytes() {
+    return byteSearches != null;
+  }
+
+  /**
+   * @return whether a rule may match within the region of the raw bytes
+   */
+  boolean mayMatch(byte[] bytes, int from, int to) {
+
+    if (byteSearches == null) {
+      return true;
+    }
+
+    for (Horspool search : byteSearches) {
+      if (search.indexOf(bytes, from, to) >= 0) {
+        return true;
+      }
+    }
+
+    return false;
+
+  }
+
+  /**
+   * @return whether a rule may match within the region
+   */
+  boolean mayMatch(char[] chars, int from, int to) {
+    return nextHit(chars, from, to, null) >= 0;
+  }
+
+  /**
+   * @param hits the index of the next occurrence of each literal found by the previous call over the same input,
+   *             or null, indexed like the rules and initially filled with {@link Integer#MIN_VALUE}
+   * @return the index of the first occurrence of any literal at or after from, or -1, or from if inactive
+   */
+  int nextHit(char[] chars, int from, int to, int[] hits) {
+
+    if (charSearches == null) {
+      return from;
+    }
+
+    int next = -1;
+
+    for (int i = 0; i < charSearches.length; i++) {
+      int hit = hits != null ? hits[i] : Integer.MIN_VALUE;
+      // Searched again only once the scan moved past the previous occurrence, and never past the last one
+      if (hit != -1 && hit < from) {
+        hit = charSearches[i].indexOf(chars, from, to);
+        if (hits != null) {
+          hits[i] = hit;
+        }
+      }
+      if (hit >= 0 && (next < 0 || hit < next)) {
+        next = hit;
+      }
+    }
+
+    return next;
+
+  }
+
+  /**
+   * @return a new hits array for {@link #nextHit(char[], int, int, int[])}
+   */
+  int[] newHits() {
+    int[] hits = new int[charSearches != null ? charSearches.length : 0];
+    Arrays.fill(hits, Integer.MIN_VALUE);
+    return hits;
+  }
+
+  /**
+   * Extracts the longest literal every match of the pattern contains, from the top-level sequence of the regex.
+   * Groups, classes, escapes other than quoted chars and optional chars end a literal. Patterns with a top-level
+   * alternation, or matching case-insensitively or with comments, have none.
+   *
+   * @return the literal, or null if there is none long enough
+   */
+  static String requiredLiteral(Pattern pattern) {
+
+    int flags = pattern.flags();
+    String regex = pattern.pattern();
+
+    if ((flags & (Pattern.CASE_INSENSITIVE | Pattern.COMMENTS | Pattern.CANON_EQ)) != 0) {
+      return null;
+    }
+    if ((flags & Pattern.LITERAL) != 0) {
+      return regex.length() >= MIN_LITERAL_LENGTH ? regex : null;
+    }
+
+    String longest = "";
+    StringBuilder run = new StringBuilder();
+
+    for (int i = 0; i < regex.length(); ) {
+
+      char c = regex.charAt(i);
+      // The chars a quantifier applies to, the last one of a literal atom
+      int atomStart = run.length();
+      boolean literalAtom = true;
+
+      if (c == '\\' && i + 1 < regex.length() && regex.charAt(i + 1) == 'Q') {
+        int end = regex.indexOf("\\E", i + 2);
+        String quoted = end < 0 ? regex.substring(i + 2) : regex.substring(i + 2, end);
+        i = end < 0 ? regex.length() : end + 2;
+        // An empty quote is no atom, a quantifier after it applies to the atom before
+        if (quoted.isEmpty()) {
+          continue;
+        }
+        run.append(quoted);
+        atomStart = run.length() - 1;
+      } else if (c == '\\') {
+        if (i + 1 >= regex.length()) {
+          return null;
+        }
+        char escaped = regex.charAt(i + 1);
+        int control = "tnrfae".indexOf(escaped);
+        if (control >= 0) {
+          run.append("\t\n\r\f\u0007\u001B".charAt(control));
+          i += 2;
+        } else if (!Character.isLetterOrDigit(escaped)) {
+          run.append(escaped);
+          i += 2;
+        } else {
+          i = skipEscape(regex, i);
+          literalAtom = false;
+        }
+      } else if (c == '(') {
+        int flagsEnd = regex.startsWith("(?", i) ? skipFlags(regex, i + 2) : -1;
+        if (flagsEnd > i + 2 && flagsEnd < regex.length() && regex.charAt(flagsEnd) == ')') {
+          String inlineFlags = regex.substring(i + 2, flagsEnd);
+          if (inlineFlags.indexOf('i') >= 0 || inlineFlags.indexOf('x') >= 0) {
+            return null;
+          }
+        }
+        i = skipGroup(regex, i);
+        literalAtom = false;
+      } else if (c == '[') {
+        i = skipClass(regex, i);
+        literalAtom = false;
+      } else if (c == '.' || c == '^' || c == '$') {
+        i++;
+        literalAtom = false;
+      } else if (c == '|' || c == ')' || c == '*' || c == '+' || c == '?' || c == '{') {
+        return null;
+      } else {
+        run.append(c);
+        i++;
+      }
+
+      if (i < 0) {
+        return null;
+      }
+
+      int quantifierEnd = i < regex.length() ? skipQuantifier(regex, i) : i;
+      if (quantifierEnd != i) {
+        if (quantifierEnd < 0) {
+          return null;
+        }
+        // An optional atom is left out, a repeated one still ends the literal
+        if (literalAtom && minRepetitions(regex, i) == 0) {
+          run.setLength(atomStart);
+        }
+        i = quantifierEnd;
+        literalAtom = false;
+      }
+
+      if (!literalAtom) {
+        longest = run.length() > longest.length() ? run.toString() : longest;
+        run.setLength(0);
+      }
+
+    }
+
+    longest = run.length() > longest.length() ? run.toString() : longest;
+    return longest.length() >= MIN_LITERAL_LENGTH ? longest : null;
+
+  }
+
+  /**
+   * @return the index after the escape starting at i, or -1 if it cannot be told
+   */
+  private static int skipEscape(String regex, int i) {
+
+    char escaped = regex.charAt(i + 1);
+    int next = i + 2;
+
+    if (next < regex.length() && (regex.charAt(next) == '{' && "pPxNk".indexOf(escaped) >= 0
+        || regex.charAt(next) == '<' && escaped == 'k')) {
+      int end = regex.indexOf(regex.charAt(next) == '{' ? '}' : '>', next);
+      return end < 0 ? -1 : end + 1;
+    }
+
+    switch (escaped) {
+      case 'p':
+      case 'P':
+      case 'c':
+        return next + 1;
+      case 'x':
+        return next + 2;
+      case 'u':
+        return next + 4;
+      case '0':
+        while (next < regex.length() && next < i + 5 && regex.charAt(next) >= '0' && regex.charAt(next) <= '7') {
+          next++;
+        }
+        return next;
+      default:
+        while (Character.isDigit(escaped) && next < regex.length() && Character.isDigit(regex.charAt(next))) {
+          next++;
+        }
+        return next;
+    }
+
+  }
+
+  private static int skipFlags(String regex, int i) {
+    while (i < regex.length() && FLAGS.indexOf(regex.charAt(i)) >= 0) {
+      i++;
+    }
+    return i;
+  }
+
+  /**
+   * @return the index after the group starting at i, or -1 if it is not closed
+   */
+  private static int skipGroup(String regex, int i) {
+
+    int depth = 0;
+
+    while (i >= 0 && i < regex.length()) {
+      char c = regex.charAt(i);
+      if (c == '\\' && regex.startsWith("\\Q", i)) {
+        int end = regex.indexOf("\\E", i + 2);
+        i = end < 0 ? -1 : end + 2;
+      } else if (c == '\\') {
+        i += 2;
+      } else if (c == '[') {
+        i = skipClass(regex, i);
+      } else if (c == '(') {
+        depth++;
+        i++;
+      } else if (c == ')' && --depth == 0) {
+        return i + 1;
+      } else {
+        i++;
+      }
+    }
+
+    return -1;
+
+  }
+
+  /**
+   * @return the index after the class starting at i, or -1 if it is not closed
+   */
+  private static int skipClass(String regex, int i) {
+
+    int depth = 0;
+
+    while (i >= 0 && i < regex.length()) {
+      char c = regex.charAt(i);
+      if (c == '\\' && regex.startsWith("\\Q", i)) {
+        int end = regex.indexOf("\\E", i + 2);
+        i = end < 0 ? -1 : end + 2;
+      } else if (c == '\\') {
+        i += 2;
+      } else if (c == '[') {
+        depth++;
+        i++;
+        // A ] right after the opening bracket is a char of the class
+        if (i < regex.length() && regex.charAt(i) == '^') {
+          i++;
+        }
+        if (i < regex.length() && regex.charAt(i) == ']') {
+          i++;
+        }
+      } else if (c == ']' && --depth == 0) {
+        return i + 1;
+      } else {
+        i++;
+      }
+    }
+
+    return -1;
+
+  }
+
+  /**
+   * @return the index after the quantifier at i, i if there is none, or -1 if it cannot be told
+   */
+  private static int skipQuantifier(String regex, int i) {
+
+    char c = regex.charAt(i);
+    int next;
+
+    if (c == '?' || c == '*' || c == '+') {
+      next = i + 1;
+    } else if (c == '{') {
+      int end = regex.indexOf('}', i);
+      if (end < 0) {
+        return -1;
+      }
+      next = end + 1;
+    } else {
+      return i;
+    }
+
+    // Reluctant and possessive quantifiers
+    if (next < regex.length() && (regex.charAt(next) == '?' || regex.charAt(next) == '+')) {
+      next++;
+    }
+    return next;
+
+  }
+
+  private static int minRepetitions(String regex, int i) {
+
+    char c = regex.charAt(i);
+    if (c == '?' || c == '*') {
+      return 0;
+    }
+    if (c == '+') {
+      return 1;
+    }
+
+    int end = i + 1;
+    while (end < regex.length() && Character.isDigit(regex.charAt(end))) {
+      end++;
+    }
+    return end == i + 1 ? 0 : Integer.parseInt(regex.substring(i + 1, end));
+
+  }
+
+}
@@ -0,0 +1,104 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces the literal findRegex of every rule in a single scan, using one Aho-Corasick automaton for all rules.
+ * <p>
+ * Unlike regex rules, which are applied one after the other, all terms are matched against the original input,
+ * so a replaced value is never matched again by another rule. Replace values are literal too.
+ * <p>
+ * Immutable and thread safe, the per-input state is the disabled array and the match passed in.
+ */
+final class LiteralReplacer {
+
+  private final List<ReplacementRule> rules;
+
+  private final AhoCorasick automaton;
+
+  /**
+   * @param rules the literal rules, in order
+   */
+  LiteralReplacer(List<ReplacementRule> rules) {
+
+    this.rules = rules;
+
+    List<String> terms = new ArrayList<>(rules.size());
+    for (ReplacementRule rule : rules) {
+      terms.add(rule.getFindRegex().pattern());
+    }
+    automaton = new AhoCorasick(terms);
+
+  }
+
+  int ruleCount() {
+    return rules.size();
+  }
+
+  /**
+   * @return the length of the longest term
+   */
+  int longestTerm() {
+    return automaton.longestTerm();
+  }
+
+  /**
+   * Writes the region with all matches replaced. A rule replacing only its first match is disabled once it replaced.
+   * <p>
+   * Unless the region ends the input, the chars that may still be part of a match are not written,
+   * they start at {@link AhoCorasick.Match#getHoldFrom()}.
+   *
+   * @param input      the input
+   * @param from       the start of the region
+   * @param to         the end of the region, exclusive
+   * @param endOfInput whether no input follows the region
+   * @param disabled   the rules to ignore, indexed like the rules
+   * @param counts     incremented by the replaced matches of each rule, indexed like the rules
+   * @param out        receives the replaced region
+   * @param match      the match to reuse
+   * @return the number of replaced matches
+   */
+  int replace(CharSequence input, int from, int to, boolean endOfInput, boolean[] disabled, int[] counts,
+              Writer out, AhoCorasick.Match match) throws IOException {
+
+    int replaced = 0;
+    int position = from;
+
+    while (automaton.find(input, position, to, endOfInput, disabled, match)) {
+      ContentsPass.write(out, input, position, match.getStart());
+      ReplacementRule rule = rules.get(match.getTerm());
+      out.write(rule.getReplaceValue());
+      disabled[match.getTerm()] = !rule.isReplaceAll();
+      counts[match.getTerm()]++;
+      position = match.getEnd();
+      replaced++;
+    }
+
+    ContentsPass.write(out, input, position, match.getHoldFrom());
+    return replaced;
+
+  }
+
+  /**
+   * @param disabled the rules to ignore, indexed like the rules
+   * @param counts   incremented by the replaced matches of each rule, indexed like the rules
+   * @return the input with all matches replaced, the input itself if nothing matched
+   */
+  String replace(String input, boolean[] disabled, int[] counts) {
+
+    StringWriter out = new StringWriter(input.length());
+    try {
+      return replace(input, 0, input.length(), true, disabled, counts, out, new AhoCorasick.Match()) == 0
+          ? input : out.toString();
+    } catch (IOException e) {
+      // A StringWriter never throws
+      throw new IllegalStateException(e);
+    }
+
+  }
+
+}
@@ -0,0 +1,46 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+/**
+ * What the findRegex is matched against during file-contents replacement.
+ */
+public enum MatchScope {
+
+  /**
+   * Each line is matched on its own.
+   */
+  LINE("line"),
+
+  /**
+   * The whole decoded file is matched at once, so matches may span lines.
+   */
+  FILE("file"),
+
+  /**
+   * The file is matched through a bounded sliding window, so matches may span lines while memory stays capped.
+   */
+  STREAMING_WINDOW("streaming-window");
+
+  private final String value;
+
+  MatchScope(String value) {
+    this.value = value;
+  }
+
+  public String getValue() {
+    return value;
+  }
+
+  /**
+   * @param value the configured value
+   * @return the matching scope, or null if there is none
+   */
+  public static MatchScope fromValue(String value) {
+    for (MatchScope matchScope : values()) {
+      if (matchScope.value.equals(value)) {
+        return matchScope;
+      }
+    }
+    return null;
+  }
+
+}
@@ -0,0 +1,59 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+import java.io.IOException;
+
+/**
+ * The bytes of files all worker threads of an execution may hold whole in memory at once, so the heap taken by
+ * files read whole stays capped whatever the number of threads.
+ * <p>
+ * A file is reserved before being read and released once replaced. Each worker holds a single reservation at a
+ * time, so a worker waiting for room always gets it once the others are done with their files.
+ */
+final class MemoryBudget {
+
+  private final long maxSize;
+
+  private final ProcessMetrics metrics;
+
+  private long reserved = 0;
+
+  MemoryBudget(long maxSize, ProcessMetrics metrics) {
+    this.maxSize = maxSize;
+    this.metrics = metrics;
+  }
+
+  /**
+   * @param size the size of the file
+   * @param wait whether to wait for other workers to release room, rather than give up when there is none left
+   * @return whether the size was reserved, never for a file larger than the whole budget
+   */
+  synchronized boolean reserve(long size, boolean wait) throws IOException {
+
+    if (size > maxSize) {
+      return false;
+    }
+
+    while (reserved + size > maxSize) {
+      if (!wait) {
+        return false;
+      }
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for memory to read a file.", e);
+      }
+    }
+
+    reserved += size;
+    metrics.heldInMemory(reserved);
+    return true;
+
+  }
+
+  synchronized void release(long size) {
+    reserved -= size;
+    notifyAll();
+  }
+
+}
@@ -0,0 +1,247 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Decides which files are processed from the file masks and the Ant style includes and excludes, matched against
+ * paths relative to baseDir with / separators.
+ * <p>
+ * A file is processed if its name ends with one of the file masks, its path matches one of the includes, and it
+ * matches none of the excludes. Empty file masks or includes match everything. A directory is pruned from the walk
+ * when an exclude ending with /** matches it, as nothing beneath it could be processed.
+ * <p>
+ * In the globs, ** matches any number of directories, * any chars but / and ? a single char but /.
+ * A glob ending with / is the same as one ending with /**.
+ * <p>
+ * Every set of globs is compiled once into a single matcher: globs like **&#47;*.java into a trie of reversed
+ * suffixes, globs like **&#47;pom.xml into a set of names, and all others into one combined regex. A path is
+ * therefore checked in a single pass whatever the number of globs. Immutable and thread safe.
+ */
+public final class PathFilter {
+
+  private final GlobSet fileMasks;
+
+  private final GlobSet includes;
+
+  private final GlobSet excludes;
+
+  private final GlobSet prunedDirectories;
+
+  private PathFilter(GlobSet fileMasks, GlobSet includes, GlobSet excludes, GlobSet prunedDirectories) {
+    this.fileMasks = fileMasks;
+    this.includes = includes;
+    this.excludes = excludes;
+    this.prunedDirectories = prunedDirectories;
+  }
+
+  /**
+   * @param fileMasks the suffixes file names must end with, empty for all files
+   * @param includes  the globs paths must match, empty for all paths
+   * @param excludes  the globs paths must not match
+   * @return the compiled filter
+   */
+  public static PathFilter compile(List<String> fileMasks, List<String> includes, List<String> excludes) {
+
+    List<String> maskGlobs = new ArrayList<>(fileMasks.size());
+    for (String fileMask : fileMasks) {
+      maskGlobs.add("**/*" + escape(fileMask));
+    }
+
+    List<String> excludeGlobs = new ArrayList<>(excludes.size());
+    List<String> prunedGlobs = new ArrayList<>();
+    for (String exclude : excludes) {
+      String glob = exclude.endsWith("/") ? exclude + "**" : exclude;
+      excludeGlobs.add(glob);
+      if (glob.endsWith("/**")) {
+        prunedGlobs.add(glob.substring(0, glob.length() - 3));
+      }
+    }
+
+    List<String> includeGlobs = new ArrayList<>(includes.size());
+    for (String include : includes) {
+      includeGlobs.add(include.endsWith("/") ? include + "**" : include);
+    }
+
+    return new PathFilter(GlobSet.compile(maskGlobs), GlobSet.compile(includeGlobs), GlobSet.compile(excludeGlobs),
+        GlobSet.compile(prunedGlobs));
+
+  }
+
+  private static String escape(String literal) {
+    return literal.replace("\\", "\\\\").replace("*", "\\*").replace("?", "\\?");
+  }
+
+  /**
+   * @param relativePath the file's path relative to baseDir, with / separators
+   * @return whether the file is processed
+   */
+  public boolean isIncluded(String relativePath) {
+    return (fileMasks.isEmpty() || fileMasks.matches(relativePath))
+        && (includes.isEmpty() || includes.matches(relativePath))
+        && !excludes.matches(relativePath);
+  }
+
+  /**
+   * @param relativePath the directory's path relative to baseDir, with / separators
+   * @return whether the directory and everything beneath it is excluded
+   */
+  public boolean isPruned(String relativePath) {
+    return prunedDirectories.matches(relativePath);
+  }
+
+  /**
+   * Globs compiled into a suffix trie, a name set and a single regex.
+   */
+  private static final class GlobSet {
+
+    private final SuffixTrie suffixes;
+
+    private final Set<String> names;
+
+    private final Pattern others;
+
+    private final boolean empty;
+
+    private GlobSet(SuffixTrie suffixes, Set<String> names, Pattern others, boolean empty) {
+      this.suffixes = suffixes;
+      this.names = names;
+      this.others = others;
+      this.empty = empty;
+    }
+
+    private static GlobSet compile(List<String> globs) {
+
+      SuffixTrie suffixes = new SuffixTrie();
+      Set<String> names = new HashSet<>();
+      StringBuilder others = new StringBuilder();
+
+      for (String glob : globs) {
+        String rest = glob.startsWith("**/") ? glob.substring(3) : null;
+        if (rest != null && rest.startsWith("*") && isLiteral(rest.substring(1)) && rest.length() > 1) {
+          suffixes.add(unescape(rest.substring(1)));
+        } else if (rest != null && isLiteral(rest) && !rest.isEmpty()) {
+          names.add(unescape(rest));
+        } else {
+          others.append(others.length() == 0 ? "" : "|").append(toRegex(glob));
+        }
+      }
+
+      return new GlobSet(suffixes, names, others.length() == 0 ? null : PatternCache.compile(others.toString()),
+          globs.isEmpty());
+
+    }
+
+    private boolean isEmpty() {
+      return empty;
+    }
+
+    private boolean matches(String path) {
+      String name = path.substring(path.lastIndexOf('/') + 1);
+      return suffixes.matches(name) || names.contains(name) || others != null && others.matcher(path).matches();
+    }
+
+    /**
+     * @return whether the glob part has no wildcard and no directory, escaped wildcards being literal
+     */
+    private static boolean isLiteral(String globPart) {
+      for (int i = 0; i < globPart.length(); i++) {
+        char c = globPart.charAt(i);
+        if (c == '\\') {
+          i++;
+        } else if (c == '*' || c == '?' || c == '/') {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private static String unescape(String globPart) {
+      StringBuilder unescaped = new StringBuilder(globPart.length());
+      for (int i = 0; i < globPart.length(); i++) {
+        char c = globPart.charAt(i);
+        unescaped.append(c == '\\' && i + 1 < globPart.length() ? globPart.charAt(++i) : c);
+      }
+      return unescaped.toString();
+    }
+
+    private static String toRegex(String glob) {
+
+      StringBuilder regex = new StringBuilder("(?:");
+      StringBuilder literal = new StringBuilder();
+
+      for (int i = 0; i < glob.length(); i++) {
+        char c = glob.charAt(i);
+        String wildcard = null;
+        if (c == '\\' && i + 1 < glob.length()) {
+          literal.append(glob.charAt(++i));
+          continue;
+        } else if (glob.startsWith("**/", i)) {
+          wildcard = "(?:.*/)?";
+          i += 2;
+        } else if (glob.startsWith("/**", i) && i + 3 == glob.length()) {
+          wildcard = "(?:/.*)?";
+          i += 2;
+        } else if (glob.startsWith("**", i)) {
+          wildcard = ".*";
+          i += 1;
+        } else if (c == '*') {
+          wildcard = "[^/]*";
+        } else if (c == '?') {
+          wildcard = "[^/]";
+        } else {
+          literal.append(c);
+          continue;
+        }
+        if (literal.length() > 0) {
+          regex.append(Pattern.quote(literal.toString()));
+          literal.setLength(0);
+        }
+        regex.append(wildcard);
+      }
+
+      if (literal.length() > 0) {
+        regex.append(Pattern.quote(literal.toString()));
+      }
+      return regex.append(')').toString();
+
+    }
+
+  }
+
+  /**
+   * A trie of reversed suffixes, so a name is checked against all of them by walking it once from its end.
+   */
+  private static final class SuffixTrie {
+
+    private final Map<Character, SuffixTrie> children = new HashMap<>();
+
+    private boolean terminal = false;
+
+    private void add(String suffix) {
+      SuffixTrie node = this;
+      for (int i = suffix.length() - 1; i >= 0; i--) {
+        node = node.children.computeIfAbsent(suffix.charAt(i), c -> new SuffixTrie());
+      }
+      node.terminal = true;
+    }
+
+    private boolean matches(String name) {
+      SuffixTrie node = this;
+      for (int i = name.length() - 1; i >= 0 && !node.terminal; i--) {
+        node = node.children.get(name.charAt(i));
+        if (node == null) {
+          return false;
+        }
+      }
+      return node.terminal;
+    }
+
+  }
+
+}
@@ -0,0 +1,99 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * A JVM-wide cache of compiled patterns, so executions across the modules of a reactor compile each regex once.
+ * <p>
+ * Holds the {@value #MAX_SIZE} most recently used patterns. Compiled patterns are immutable, so sharing them between
+ * the threads of Maven's parallel builder is safe. Lookups are synchronized; compilation happens outside the lock,
+ * so two threads may compile the same regex concurrently, and the first one cached wins.
+ */
+public final class PatternCache {
+
+  static final int MAX_SIZE = 512;
+
+  private static final Map<Key, Pattern> PATTERNS = new LinkedHashMap<Key, Pattern>(64, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Key, Pattern> eldest) {
+      return size() > MAX_SIZE;
+    }
+  };
+
+  private PatternCache() {
+    // do not instantiate
+  }
+
+  /**
+   * @param regex the regex to compile
+   * @return the cached or newly compiled pattern
+   */
+  public static Pattern compile(String regex) {
+    return compile(regex, 0);
+  }
+
+  /**
+   * @param regex the regex to compile
+   * @param flags the match flags, as for Pattern.compile
+   * @return the cached or newly compiled pattern
+   */
+  public static Pattern compile(String regex, int flags) {
+
+    Key key = new Key(regex, flags);
+
+    synchronized (PATTERNS) {
+      Pattern pattern = PATTERNS.get(key);
+      if (pattern != null) {
+        return pattern;
+      }
+    }
+
+    Pattern pattern = Pattern.compile(regex, flags);
+
+    synchronized (PATTERNS) {
+      Pattern cached = PATTERNS.putIfAbsent(key, pattern);
+      return cached != null ? cached : pattern;
+    }
+
+  }
+
+  static int size() {
+    synchronized (PATTERNS) {
+      return PATTERNS.size();
+    }
+  }
+
+  private static final class Key {
+
+    private final String regex;
+
+    private final int flags;
+
+    private Key(String regex, int flags) {
+      this.regex = regex;
+      this.flags = flags;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) o;
+      return flags == key.flags && regex.equals(key.regex);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(regex, flags);
+    }
+
+  }
+
+}
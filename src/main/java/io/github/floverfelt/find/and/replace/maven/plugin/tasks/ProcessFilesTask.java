@@ -2,27 +2,32 @@ package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
 
 import org.apache.maven.plugin.logging.Log;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.nio.charset.Charset;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
-import java.util.ListIterator;
-import java.util.regex.Matcher;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 public class ProcessFilesTask {
 
+  /**
+   * Temp files older than this were left behind by an aborted execution, younger ones may belong to a running one.
+   */
+  private static final long ORPHANED_TEMP_FILE_AGE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
   private ProcessFilesTask() {
     // do not instantiate
   }
@@ -30,182 +35,494 @@ public class ProcessFilesTask {
   /**
    * Stupid simple implementation of file walking, renaming, etc.
    *
-   * @param log                   the maven-plugin log
-   * @param baseDir               the directory to start in
-   * @param isRecursive           whether to recurse further
-   * @param findRegex             the regex to find
-   * @param replaceValue          the value to replace the found regex
-   * @param fileMasks             the file masks to use
-   * @param exclusions            the filename regex to exclude
-   * @param processFileContents   whether to process file contents
-   * @param processFilenames      whether to process file names
-   * @param processDirectoryNames whether to process directory names
-   * @param charset               encoding to be used when reading files
+   * @param log     the maven-plugin log
+   * @param options what to process and how
+   * @param metrics receives the counters and timers of the execution
    */
-  public static void process(Log log, Path baseDir, boolean isRecursive, Pattern findRegex, String replaceValue,
-                             List<String> fileMasks, List<Pattern> exclusions, boolean processFileContents,
-                             boolean processFilenames, boolean processDirectoryNames, boolean replaceAll, Charset charset) throws IOException {
+  public static void process(Log log, ProcessOptions options, ProcessMetrics metrics) throws IOException {
 
-    // Load in the files in the base dir
-    File[] baseDirFiles = new File(baseDir.toUri()).listFiles();
-    if (baseDirFiles == null) {
+    Path baseDir = options.getBaseDir();
+    if (!Files.isDirectory(baseDir)) {
       throw new IOException(String.format("Unable to list file(s) in baseDir='%s'", baseDir));
     }
-    List<File> filesToProcess = new ArrayList<>(Arrays.asList(baseDirFiles));
 
-    ListIterator<File> iterator = filesToProcess.listIterator();
+    FileContentsProcessor contentsProcessor = options.isProcessFileContents()
+        ? new FileContentsProcessor(log, options, metrics) : null;
 
-    while (iterator.hasNext()) {
+    long startNanos = System.nanoTime();
+    long sweepBefore = options.isProcessFileContents() && options.getDryRunReport() == null
+        ? System.currentTimeMillis() - ORPHANED_TEMP_FILE_AGE_MILLIS : Long.MIN_VALUE;
 
-      File file = iterator.next();
+    try (FileContentsExecutor executor = new FileContentsExecutor(options.getExecutorType(), options.getThreads(),
+        options.getPipelineQueueSize(), metrics)) {
 
-      // Remove the file from processing
-      iterator.remove();
+      ProcessFilesVisitor visitor = new ProcessFilesVisitor(log, options, executor, contentsProcessor,
+          options.isRespectIgnoreFiles() ? IgnoreFiles.load(baseDir) : null, metrics, sweepBefore);
+      visitor.walk(baseDir);
 
-      // Perform dir checks
-      if (file.isDirectory()) {
-        iterator = processDirectory(iterator, isRecursive, file, processDirectoryNames, exclusions, findRegex, replaceValue, replaceAll, log);
-      }
+      long awaitNanos = System.nanoTime();
+      executor.awaitAll();
+      metrics.outsideWalk(System.nanoTime() - awaitNanos);
 
-      if (file.isFile()) {
-        processFile(log, exclusions, file, fileMasks, processFileContents, findRegex, replaceValue, processFilenames, replaceAll, charset);
+      long binarySkipped = metrics.toMap().get("filesBinary");
+      if (options.getBinaryHandling() == BinaryHandling.SKIP && binarySkipped > 0) {
+        log.info(String.format("Skipped %d binary file(s), run with -X to list them.", binarySkipped));
       }
 
+    } finally {
+      metrics.total(System.nanoTime() - startNanos);
+    }
+
+  }
+
+  private static boolean shouldExcludeFile(List<Pattern> exclusions, File file) {
+
+    for (Pattern p : exclusions) {
+      if (p.matcher(file.getName()).find()) {
+        return true;
+      }
     }
 
+    return false;
+
   }
 
+  /**
+   * @param literalReplacers the literal replacers by applicable rules, or null to apply the rules as regexes
+   */
+  private static File renameFile(Log log, File file, List<ReplacementRule> rules,
+                                 Map<List<ReplacementRule>, LiteralReplacer> literalReplacers,
+                                 ProcessMetrics metrics, boolean isDirectory) throws IOException {
+
+    long startNanos = System.nanoTime();
+    Path filePath = file.toPath();
+    Path parentDir = filePath.getParent();
+    String oldName = file.getName();
+    String newName = oldName;
+    if (literalReplacers != null) {
+      List<ReplacementRule> fileRules = new ArrayList<>(rules.size());
+      for (ReplacementRule rule : rules) {
+        if (isDirectory || rule.appliesTo(file)) {
+          fileRules.add(rule);
+        }
+      }
+      if (!fileRules.isEmpty()) {
+        newName = literalReplacers.computeIfAbsent(fileRules, LiteralReplacer::new)
+            .replace(oldName, new boolean[fileRules.size()], new int[fileRules.size()]);
+      }
+    } else {
+      for (ReplacementRule rule : rules) {
+        if (isDirectory || rule.appliesTo(file)) {
+          newName = rule.replace(newName);
+        }
+      }
+    }
+
+    if (!newName.equals(oldName)) {
+      Path targetPath = Paths.get(parentDir.toString(), newName);
+
+      log.info(String.format("Renaming %s to %s", oldName, newName));
+
+      File renamedFile = new File(Files.move(filePath, targetPath).toUri());
+      metrics.renamed(true, System.nanoTime() - startNanos);
+      return renamedFile;
+
+    }
+
+    metrics.renamed(false, System.nanoTime() - startNanos);
+    return file;
 
-  private static ListIterator<File> processDirectory(ListIterator<File> iterator, boolean isRecursive, File file,
-                                                     boolean processDirectoryNames, List<Pattern> exclusions, Pattern findRegex,
-                                                     String replaceValue, boolean replaceAll, Log log) throws IOException {
+  }
 
-    // Rename the directory
-    if (processDirectoryNames && !shouldExcludeFile(exclusions, file)) {
-      file = renameFile(log, file, findRegex, replaceValue, replaceAll);
+  /**
+   * @return the matches of every rule within the name as renameFile replaces it, indexed like the rules
+   */
+  private static int[] countNameMatches(File file, List<ReplacementRule> rules,
+                                        Map<List<ReplacementRule>, LiteralReplacer> literalReplacers,
+                                        boolean isDirectory) {
+
+    int[] counts = new int[rules.size()];
+    String name = file.getName();
+
+    if (literalReplacers != null) {
+      List<ReplacementRule> fileRules = new ArrayList<>(rules.size());
+      for (ReplacementRule rule : rules) {
+        if (isDirectory || rule.appliesTo(file)) {
+          fileRules.add(rule);
+        }
+      }
+      if (!fileRules.isEmpty()) {
+        int[] fileCounts = new int[fileRules.size()];
+        literalReplacers.computeIfAbsent(fileRules, LiteralReplacer::new).replace(name,
+            new boolean[fileRules.size()], fileCounts);
+        for (int i = 0; i < fileRules.size(); i++) {
+          counts[rules.indexOf(fileRules.get(i))] = fileCounts[i];
+        }
+      }
+      return counts;
     }
 
-    // If recursive, add child files to iterator
-    if (isRecursive) {
-      File[] filesToAdd = file.listFiles();
-      assert filesToAdd != null;
-      for (File f : filesToAdd) {
-        iterator.add(f);
-        iterator.previous();
+    // Each rule matches the name as replaced by the previous ones, the way renameFile applies them
+    for (int i = 0; i < rules.size(); i++) {
+      ReplacementRule rule = rules.get(i);
+      if (isDirectory || rule.appliesTo(file)) {
+        StringBuilder replaced = new StringBuilder(name.length());
+        counts[i] = rule.replace(rule.getFindRegex().matcher(name), name, replaced);
+        name = replaced.toString();
       }
     }
 
-    return iterator;
+    return counts;
 
   }
 
+  /**
+   * Processes or counts the matches of a file's contents, skipping files unchanged since the previous execution.
+   * Prefetched files are read by the read stage, other files by the match stage.
+   */
+  private static final class FileContentsTask implements FileContentsExecutor.ContentsTask {
 
-  private static boolean shouldExcludeFile(List<Pattern> exclusions, File file) {
+    private final File file;
 
-    for (Pattern p : exclusions) {
-      if (p.matcher(file.getName()).find()) {
-        return true;
+    private final FileContentsProcessor contentsProcessor;
+
+    private final FingerprintIndex fingerprintIndex;
+
+    private final boolean countOnly;
+
+    private final boolean prefetch;
+
+    private FileContents contents;
+
+    private int[] contentsMatches;
+
+    private FileContentsTask(File file, FileContentsProcessor contentsProcessor, ProcessOptions options) {
+      this.file = file;
+      this.contentsProcessor = contentsProcessor;
+      this.fingerprintIndex = options.getFingerprintIndex();
+      this.countOnly = options.getDryRunReport() != null;
+      this.prefetch = options.getExecutorType() != ExecutorType.SEQUENTIAL && options.getPipelineQueueSize() > 0;
+    }
+
+    @Override
+    public void read() throws IOException {
+      if (countOnly || fingerprintIndex == null || !fingerprintIndex.isUnchanged(file)) {
+        contents = prefetch ? contentsProcessor.prefetch(file) : contentsProcessor.open(file);
       }
     }
 
-    return false;
+    @Override
+    public void match() throws IOException {
+      if (contents != null && countOnly) {
+        contentsMatches = contentsProcessor.countMatches(contents);
+      } else if (contents != null) {
+        contentsProcessor.process(contents);
+      }
+    }
+
+    @Override
+    public void write() throws IOException {
+      if (contents != null && !countOnly) {
+        contents.write();
+        if (fingerprintIndex != null) {
+          fingerprintIndex.update(file);
+        }
+      }
+      contents = null;
+    }
 
   }
 
-  private static boolean shouldProcessFile(List<String> fileMasks, File file) {
+  /**
+   * Walks the tree, renaming directories before their children are visited and pruning excluded directories,
+   * whether excluded by name or by path.
+   * <p>
+   * A renamed directory cannot be walked under its old path anymore, so its subtree is skipped and walked again
+   * from the new path.
+   * <p>
+   * With changed paths, only the changed files are processed and only the directories holding them are walked and
+   * renamed. They are looked up by their path from before any directory was renamed.
+   * <p>
+   * With ignore files, the ignore files of a directory apply from the moment it is entered until it is left, and
+   * ignored directories are pruned before they are listed.
+   * <p>
+   * Temp files written while replacing file contents are never processed, and those orphaned by an aborted
+   * execution are deleted along the way. Neither are the files the execution writes itself, such as its index.
+   */
+  private static final class ProcessFilesVisitor extends SimpleFileVisitor<Path> {
+
+    private final Log log;
+
+    private final FileContentsExecutor executor;
+
+    private final Path baseDir;
+
+    private final int maxDepth;
 
-    if (fileMasks.isEmpty()) {
-      return true;
+    private final List<ReplacementRule> rules;
+
+    /**
+     * The literal replacers by applicable rules, or null to apply the rules as regexes.
+     */
+    private final Map<List<ReplacementRule>, LiteralReplacer> literalReplacers;
+
+    private final PathFilter pathFilter;
+
+    private final List<Pattern> exclusions;
+
+    private final FileContentsProcessor contentsProcessor;
+
+    private final FingerprintIndex fingerprintIndex;
+
+    private final ChangedPaths changedPaths;
+
+    private final IgnoreFiles ignoreFiles;
+
+    private final Set<Path> outputPaths;
+
+    private final DryRunReport dryRunReport;
+
+    private final ProcessMetrics metrics;
+
+    private final long sweepBefore;
+
+    private final ProcessOptions options;
+
+    private final boolean processFilenames;
+
+    private final boolean processDirectoryNames;
+
+    private Path walkRoot;
+
+    /**
+     * The path the walk root had before it was renamed.
+     */
+    private Path walkOriginalRoot;
+
+    private ProcessFilesVisitor(Log log, ProcessOptions options, FileContentsExecutor executor,
+                                FileContentsProcessor contentsProcessor, IgnoreFiles ignoreFiles,
+                                ProcessMetrics metrics, long sweepBefore) {
+      this.log = log;
+      this.executor = executor;
+      this.baseDir = options.getBaseDir().toAbsolutePath();
+      this.maxDepth = options.isRecursive() ? Integer.MAX_VALUE : 1;
+      this.rules = options.getRules();
+      this.literalReplacers = options.isLiteral() ? new HashMap<>() : null;
+      this.pathFilter = options.getPathFilter();
+      this.exclusions = options.getExclusions();
+      this.contentsProcessor = contentsProcessor;
+      this.fingerprintIndex = options.getFingerprintIndex();
+      this.changedPaths = options.getChangedPaths();
+      this.ignoreFiles = ignoreFiles;
+      this.outputPaths = options.getOutputPaths();
+      this.dryRunReport = options.getDryRunReport();
+      this.metrics = metrics;
+      this.sweepBefore = sweepBefore;
+      this.options = options;
+      this.processFilenames = options.isProcessFilenames();
+      this.processDirectoryNames = options.isProcessDirectoryNames();
     }
 
-    for (String fileMask : fileMasks) {
-      if (file.getName().endsWith(fileMask)) {
-        return true;
+    private void walk(Path root) throws IOException {
+      walk(root, root);
+    }
+
+    private void walk(Path root, Path originalRoot) throws IOException {
+      Path previousRoot = walkRoot;
+      Path previousOriginalRoot = walkOriginalRoot;
+      walkRoot = root;
+      walkOriginalRoot = originalRoot;
+      Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), maxDepth, this);
+      walkRoot = previousRoot;
+      walkOriginalRoot = previousOriginalRoot;
+    }
+
+    @Override
+    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+
+      if (dir.equals(walkRoot)) {
+        enterDirectory(dir);
+        return FileVisitResult.CONTINUE;
+      }
+
+      File directory = dir.toFile();
+      metrics.directoryVisited();
+
+      if (isPrunedDirectory(dir, directory)) {
+        metrics.excluded();
+        return FileVisitResult.SKIP_SUBTREE;
+      }
+
+      if (processDirectoryNames && dryRunReport != null) {
+        countDirectoryName(directory);
+      } else if (processDirectoryNames) {
+        File renamedDirectory = renameDirectory(directory);
+        if (!renamedDirectory.equals(directory)) {
+          walk(renamedDirectory.toPath(), walkOriginalRoot.resolve(walkRoot.relativize(dir)));
+          return FileVisitResult.SKIP_SUBTREE;
+        }
       }
+
+      enterDirectory(dir);
+      return FileVisitResult.CONTINUE;
+
     }
 
-    return false;
+    @Override
+    public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+      if (ignoreFiles != null) {
+        ignoreFiles.exit();
+      }
+      return super.postVisitDirectory(dir, exc);
+    }
 
-  }
+    @Override
+    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+
+      // Directories at the maximum depth are visited as files
+      if (attrs.isDirectory()) {
+        metrics.directoryVisited();
+        if (isPrunedDirectory(file, file.toFile())) {
+          metrics.excluded();
+        } else if (processDirectoryNames && dryRunReport != null) {
+          countDirectoryName(file.toFile());
+        } else if (processDirectoryNames) {
+          renameDirectory(file.toFile());
+        }
+      } else if (attrs.isRegularFile()) {
+        metrics.fileVisited();
+        if (FileContents.isTempFile(file.getFileName().toString())) {
+          sweepTempFile(file, attrs);
+        } else if (isOutputPath(file) || changedPaths != null && !changedPaths.isChanged(originalPath(file))
+            || ignoreFiles != null && ignoreFiles.isIgnored(relativePath(file), false)) {
+          metrics.excluded();
+        } else {
+          processFile(file.toFile(), relativePath(file));
+        }
+      }
 
-  private static File renameFile(Log log, File file, Pattern findRegex, String replaceValue, boolean replaceAll) throws IOException {
+      return FileVisitResult.CONTINUE;
 
-    Path filePath = file.toPath();
-    Path parentDir = filePath.getParent();
-    String oldName = file.getName();
-    Matcher matcher = findRegex.matcher(oldName);
-    String newName = replaceAll ? matcher.replaceAll(replaceValue) : matcher.replaceFirst(replaceValue);
+    }
 
-    if (!newName.equals(oldName)) {
-      Path targetPath = Paths.get(parentDir.toString(), newName);
+    private void processFile(File file, String relativePath) throws IOException {
 
-      log.info(String.format("Renaming %s to %s", oldName, newName));
+      if (shouldExcludeFile(exclusions, file)) {
+        metrics.excluded();
+        return;
+      }
 
-      return new File(Files.move(filePath, targetPath).toUri());
+      if (!pathFilter.isIncluded(relativePath)) {
+        metrics.filtered();
+        return;
+      }
+
+      long submitNanos = System.nanoTime();
+      try {
+        submitFile(file);
+      } finally {
+        metrics.outsideWalk(System.nanoTime() - submitNanos);
+      }
 
     }
 
-    return file;
+    private void submitFile(File file) throws IOException {
 
-  }
+      FileContentsTask contentsTask = contentsProcessor == null ? null
+          : new FileContentsTask(file, contentsProcessor, options);
 
-  private static void processFileContents(File file, Pattern findRegex, String replaceValue, boolean replaceAll, Charset charset) throws IOException {
-
-    File tempFile = File.createTempFile("tmp", "tmp", file.getParentFile());
-
-    try (FileInputStream fis = new FileInputStream(file);
-         InputStreamReader isr = new InputStreamReader(fis, charset);
-         BufferedReader fileReader = new BufferedReader(isr)) {
-      try (FileOutputStream fos = new FileOutputStream(tempFile);
-           OutputStreamWriter osr = new OutputStreamWriter(fos, charset);
-           BufferedWriter fileWriter = new BufferedWriter(osr)) {
-
-        boolean alreadyReplaced = false;
-
-        for (String line = fileReader.readLine(); line != null; line = fileReader.readLine()) {
-          Matcher matcher = findRegex.matcher(line);
-          if (matcher.find()) {
-            if (replaceAll) {
-              line = matcher.replaceAll(replaceValue);
-            }
-            else if (!alreadyReplaced) {
-                line = matcher.replaceFirst(replaceValue);
-                alreadyReplaced = true;
-            }
-          }
-          try {
-             fileWriter.write(line + "\n");
-          } catch (IOException e) {
-            throw new RuntimeException(e);
+      if (dryRunReport != null) {
+        // Counted on a worker thread, recorded on this thread in walk order
+        executor.submit(contentsTask, () -> dryRunReport.record(file,
+            contentsTask != null ? contentsTask.contentsMatches : null,
+            processFilenames ? countNameMatches(file, rules, literalReplacers, false) : null));
+        return;
+      }
+
+      FileContentsExecutor.IOTask renameTask = null;
+      if (processFilenames) {
+        renameTask = () -> {
+          File renamedFile = renameFile(log, file, rules, literalReplacers, metrics, false);
+          if (fingerprintIndex != null) {
+            fingerprintIndex.moved(file, renamedFile);
           }
-        }
+        };
       }
+
+      // File contents may run on a worker thread, the rename always runs afterwards on this thread
+      executor.submit(contentsTask, renameTask);
+
     }
 
-    if (!file.delete()) {
-      throw new IOException("Failed to delete file at: " + file.getPath());
+    private boolean isPrunedDirectory(Path dir, File directory) {
+      String relativePath = relativePath(dir);
+      return shouldExcludeFile(exclusions, directory) || pathFilter.isPruned(relativePath) || isOutputPath(dir)
+          || changedPaths != null && !changedPaths.holdsChanges(originalPath(dir))
+          || ignoreFiles != null && ignoreFiles.isIgnored(relativePath, true);
     }
 
-    if (!tempFile.renameTo(file)) {
-      throw new IOException("Failed to rename temp file at: " + tempFile.getPath() + " to " + file.getPath());
+    private boolean isOutputPath(Path path) {
+      return !outputPaths.isEmpty() && outputPaths.contains(path.toAbsolutePath().normalize());
     }
 
-  }
+    private void enterDirectory(Path dir) throws IOException {
+      if (ignoreFiles != null) {
+        ignoreFiles.enter(dir, relativePath(dir));
+      }
+    }
+
+    private void sweepTempFile(Path file, BasicFileAttributes attrs) throws IOException {
+      metrics.excluded();
+      if (attrs.lastModifiedTime().toMillis() < sweepBefore) {
+        log.info("Deleting orphaned temp file " + file);
+        Files.deleteIfExists(file);
+      }
+    }
 
-  private static void processFile(Log log, List<Pattern> exclusions, File file, List<String> fileMasks,
-                                  boolean processFileContents, Pattern findRegex, String replaceValue,
-                                  boolean processFilenames, boolean replaceAll, Charset charset) throws IOException {
+    /**
+     * @return the path relative to baseDir with / separators, the same whichever root is being walked
+     */
+    private String relativePath(Path path) {
+      return baseDir.relativize(path.toAbsolutePath()).toString().replace(File.separatorChar, '/');
+    }
 
-    if (shouldExcludeFile(exclusions, file) || !shouldProcessFile(fileMasks, file)) {
-      return;
+    /**
+     * @return the path relative to baseDir the path had before any directory was renamed, with / separators
+     */
+    private String originalPath(Path path) {
+      return relativePath(walkOriginalRoot.resolve(walkRoot.relativize(path)));
     }
 
-    if (processFileContents) {
-      processFileContents(file, findRegex, replaceValue, replaceAll, charset);
+    private File renameDirectory(File directory) throws IOException {
+      long renameNanos = System.nanoTime();
+      try {
+        return renameFile(log, directory, rules, literalReplacers, metrics, true);
+      } finally {
+        metrics.outsideWalk(System.nanoTime() - renameNanos);
+      }
+    }
+
+    private void countDirectoryName(File directory) throws IOException {
+      long submitNanos = System.nanoTime();
+      try {
+        // Queued behind the files already submitted, so the report keeps the walk order
+        executor.submit(null, () -> dryRunReport.record(directory, null,
+            countNameMatches(directory, rules, literalReplacers, true)));
+      } finally {
+        metrics.outsideWalk(System.nanoTime() - submitNanos);
+      }
     }
 
-    if (processFilenames) {
-      renameFile(log, file, findRegex, replaceValue, replaceAll);
+    @Override
+    public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+
+      // Symbolic links pointing back up the tree
+      if (exc instanceof FileSystemLoopException) {
+        return FileVisitResult.CONTINUE;
+      }
+
+      throw exc;
+
     }
 
   }
@@ -0,0 +1,250 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and timers of a single execution.
+ * <p>
+ * Counters are updated from the walking thread and the worker threads alike. The contents and renames timers sum
+ * the time spent on every thread, so with several threads they may exceed the total. The walk timer is the time
+ * the walking thread spent listing and filtering, outside of contents processing and renames.
+ * <p>
+ * When pipelined, the peak depth of the queue in front of each stage tells which stage holds the others back:
+ * a queue running full feeds a stage too slow for the stage before it. Back-pressure is the time stages spent
+ * waiting for room in a full queue.
+ * <p>
+ * The in-memory peak is the most bytes of files held whole in memory at once by all threads, see
+ * {@link MemoryBudget}.
+ */
+public class ProcessMetrics {
+
+  private final LongAdder directoriesVisited = new LongAdder();
+
+  private final LongAdder filesVisited = new LongAdder();
+
+  private final LongAdder filesExcluded = new LongAdder();
+
+  private final LongAdder filesFiltered = new LongAdder();
+
+  private final LongAdder filesBinary = new LongAdder();
+
+  private final LongAdder filesProcessed = new LongAdder();
+
+  private final LongAdder filesRewritten = new LongAdder();
+
+  private final LongAdder bytesRead = new LongAdder();
+
+  private final LongAdder bytesWritten = new LongAdder();
+
+  private final LongAdder matches = new LongAdder();
+
+  private final LongAdder renames = new LongAdder();
+
+  private final LongAdder contentsNanos = new LongAdder();
+
+  private final LongAdder renamesNanos = new LongAdder();
+
+  private final LongAdder outsideWalkNanos = new LongAdder();
+
+  private final LongAccumulator readQueuePeak = new LongAccumulator(Math::max, 0);
+
+  private final LongAccumulator matchQueuePeak = new LongAccumulator(Math::max, 0);
+
+  private final LongAccumulator writeQueuePeak = new LongAccumulator(Math::max, 0);
+
+  private final LongAdder backPressureNanos = new LongAdder();
+
+  private final LongAccumulator inMemoryPeak = new LongAccumulator(Math::max, 0);
+
+  private volatile boolean pipelined = false;
+
+  private long totalNanos;
+
+  void directoryVisited() {
+    directoriesVisited.increment();
+  }
+
+  void fileVisited() {
+    filesVisited.increment();
+  }
+
+  /**
+   * A file or directory matching an exclusion.
+   */
+  void excluded() {
+    filesExcluded.increment();
+  }
+
+  /**
+   * A file not matching the file masks.
+   */
+  void filtered() {
+    filesFiltered.increment();
+  }
+
+  /**
+   * A file sniffed as binary, whether it is then skipped or replaced at the byte level.
+   */
+  void binary() {
+    filesBinary.increment();
+  }
+
+  void processed(long fileBytesRead, long nanos) {
+    filesProcessed.increment();
+    bytesRead.add(fileBytesRead);
+    contentsNanos.add(nanos);
+  }
+
+  void rewritten(long fileBytesWritten) {
+    filesRewritten.increment();
+    bytesWritten.add(fileBytesWritten);
+  }
+
+  void matched(long fileMatches) {
+    matches.add(fileMatches);
+  }
+
+  void renamed(boolean renamed, long nanos) {
+    if (renamed) {
+      renames.increment();
+    }
+    renamesNanos.add(nanos);
+  }
+
+  /**
+   * Time the walking thread spent running or waiting for contents processing and renames.
+   */
+  void outsideWalk(long nanos) {
+    outsideWalkNanos.add(nanos);
+  }
+
+  void pipelined() {
+    pipelined = true;
+  }
+
+  void readQueued(int depth) {
+    readQueuePeak.accumulate(depth);
+  }
+
+  void matchQueued(int depth) {
+    matchQueuePeak.accumulate(depth);
+  }
+
+  void writeQueued(int depth) {
+    writeQueuePeak.accumulate(depth);
+  }
+
+  /**
+   * Time a pipeline stage, or the walking thread, waited for room in the queue of the next stage.
+   */
+  void backPressure(long nanos) {
+    backPressureNanos.add(nanos);
+  }
+
+  /**
+   * The bytes of the files held whole in memory by all threads, once a file was reserved.
+   */
+  void heldInMemory(long bytes) {
+    inMemoryPeak.accumulate(bytes);
+  }
+
+  void total(long nanos) {
+    totalNanos = nanos;
+  }
+
+  /**
+   * @return the metrics by name, in a stable order, times in milliseconds
+   */
+  public Map<String, Long> toMap() {
+    Map<String, Long> map = new LinkedHashMap<>();
+    map.put("directoriesVisited", directoriesVisited.sum());
+    map.put("filesVisited", filesVisited.sum());
+    map.put("filesExcluded", filesExcluded.sum());
+    map.put("filesFiltered", filesFiltered.sum());
+    map.put("filesBinary", filesBinary.sum());
+    map.put("filesProcessed", filesProcessed.sum());
+    map.put("filesRewritten", filesRewritten.sum());
+    map.put("bytesRead", bytesRead.sum());
+    map.put("bytesWritten", bytesWritten.sum());
+    map.put("matches", matches.sum());
+    map.put("renames", renames.sum());
+    map.put("walkMillis", TimeUnit.NANOSECONDS.toMillis(Math.max(0, totalNanos - outsideWalkNanos.sum())));
+    map.put("contentsMillis", TimeUnit.NANOSECONDS.toMillis(contentsNanos.sum()));
+    map.put("renamesMillis", TimeUnit.NANOSECONDS.toMillis(renamesNanos.sum()));
+    map.put("totalMillis", TimeUnit.NANOSECONDS.toMillis(totalNanos));
+    map.put("readQueuePeak", readQueuePeak.get());
+    map.put("matchQueuePeak", matchQueuePeak.get());
+    map.put("writeQueuePeak", writeQueuePeak.get());
+    map.put("backPressureMillis", TimeUnit.NANOSECONDS.toMillis(backPressureNanos.sum()));
+    map.put("inMemoryPeak", inMemoryPeak.get());
+    return map;
+  }
+
+  /**
+   * Writes the metrics as JSON, or appends them as a CSV row when the file name ends with .csv, so a CSV file
+   * collects one row per execution. The header is written when the CSV file is created.
+   *
+   * @param metricsFile the file to write, its parent directories are created
+   */
+  public void write(Path metricsFile) throws IOException {
+
+    Files.createDirectories(metricsFile.toAbsolutePath().getParent());
+    Map<String, Long> map = toMap();
+    String timestamp = Instant.now().toString();
+
+    if (metricsFile.getFileName().toString().endsWith(".csv")) {
+      boolean header = !Files.exists(metricsFile);
+      try (BufferedWriter writer = Files.newBufferedWriter(metricsFile, StandardCharsets.UTF_8,
+          StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+        if (header) {
+          writer.write("timestamp," + String.join(",", map.keySet()) + "\n");
+        }
+        StringBuilder row = new StringBuilder(timestamp);
+        for (long value : map.values()) {
+          row.append(',').append(value);
+        }
+        writer.write(row.append('\n').toString());
+      }
+      return;
+    }
+
+    try (BufferedWriter writer = Files.newBufferedWriter(metricsFile, StandardCharsets.UTF_8)) {
+      writer.write("{\n  \"timestamp\": \"" + timestamp + "\"");
+      for (Map.Entry<String, Long> entry : map.entrySet()) {
+        writer.write(",\n  \"" + entry.getKey() + "\": " + entry.getValue());
+      }
+      writer.write("\n}\n");
+    }
+
+  }
+
+  @Override
+  public String toString() {
+    Map<String, Long> map = toMap();
+    String summary = String.format("%d file(s) and %d directories visited, %d excluded, %d filtered by mask, %d binary, "
+            + "%d processed, %d rewritten, %d byte(s) read, %d written, %d match(es), %d rename(s) in %d ms "
+            + "(walk %d ms, contents %d ms, renames %d ms), %d byte(s) held in memory at peak",
+        map.get("filesVisited"), map.get("directoriesVisited"), map.get("filesExcluded"), map.get("filesFiltered"),
+        map.get("filesBinary"), map.get("filesProcessed"), map.get("filesRewritten"), map.get("bytesRead"),
+        map.get("bytesWritten"), map.get("matches"), map.get("renames"), map.get("totalMillis"), map.get("walkMillis"),
+        map.get("contentsMillis"), map.get("renamesMillis"), map.get("inMemoryPeak"));
+    if (!pipelined) {
+      return summary;
+    }
+    return summary + String.format(", pipeline queue peaks read %d, match %d, write %d, back-pressure %d ms",
+        map.get("readQueuePeak"), map.get("matchQueuePeak"), map.get("writeQueuePeak"),
+        map.get("backPressureMillis"));
+  }
+
+}
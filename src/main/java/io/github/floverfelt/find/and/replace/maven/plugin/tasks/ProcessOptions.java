@@ -0,0 +1,486 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * What an execution processes and how, built once and handed to every part of the processing.
+ * <p>
+ * Every option not set on the {@link Builder} keeps the default of the matching plugin parameter.
+ */
+public final class ProcessOptions {
+
+  private final Path baseDir;
+
+  private final boolean recursive;
+
+  private final List<ReplacementRule> rules;
+
+  private final boolean literal;
+
+  private final PathFilter pathFilter;
+
+  private final List<Pattern> exclusions;
+
+  private final boolean processFileContents;
+
+  private final boolean processFilenames;
+
+  private final boolean processDirectoryNames;
+
+  private final Charset charset;
+
+  private final ExecutorType executorType;
+
+  private final int threads;
+
+  private final int pipelineQueueSize;
+
+  private final boolean skipUnmatchedFiles;
+
+  private final ContentsReader contentsReader;
+
+  private final MatchScope matchScope;
+
+  private final int maxMatchLength;
+
+  private final long maxInMemorySize;
+
+  private final boolean preserveLineEndings;
+
+  private final BinaryHandling binaryHandling;
+
+  private final FingerprintIndex fingerprintIndex;
+
+  private final ChangedPaths changedPaths;
+
+  private final boolean respectIgnoreFiles;
+
+  private final Set<Path> outputPaths;
+
+  private final DryRunReport dryRunReport;
+
+  private ProcessOptions(Builder builder) {
+    this.baseDir = builder.baseDir;
+    this.recursive = builder.recursive;
+    this.rules = builder.rules;
+    this.literal = builder.literal;
+    this.pathFilter = builder.pathFilter;
+    this.exclusions = builder.exclusions;
+    this.processFileContents = builder.processFileContents;
+    this.processFilenames = builder.processFilenames;
+    this.processDirectoryNames = builder.processDirectoryNames;
+    this.charset = builder.charset;
+    this.executorType = builder.executorType;
+    this.threads = builder.threads;
+    this.pipelineQueueSize = builder.pipelineQueueSize;
+    this.skipUnmatchedFiles = builder.skipUnmatchedFiles;
+    this.contentsReader = builder.contentsReader;
+    this.matchScope = builder.matchScope;
+    this.maxMatchLength = builder.maxMatchLength;
+    this.maxInMemorySize = builder.maxInMemorySize;
+    this.preserveLineEndings = builder.preserveLineEndings;
+    this.binaryHandling = builder.binaryHandling;
+    this.fingerprintIndex = builder.fingerprintIndex;
+    this.changedPaths = builder.changedPaths;
+    this.respectIgnoreFiles = builder.respectIgnoreFiles;
+    this.outputPaths = builder.outputPaths;
+    this.dryRunReport = builder.dryRunReport;
+  }
+
+  /**
+   * @param baseDir the directory to start in
+   * @param rules   the replacement rules, applied in order
+   * @return a builder of the options with every other option left to its default
+   */
+  public static Builder builder(Path baseDir, List<ReplacementRule> rules) {
+    return new Builder(baseDir, rules);
+  }
+
+  /**
+   * @return a builder starting from these options, to derive options differing in a few of them
+   */
+  Builder toBuilder() {
+    return new Builder(baseDir, rules)
+        .recursive(recursive)
+        .literal(literal)
+        .pathFilter(pathFilter)
+        .exclusions(exclusions)
+        .processFileContents(processFileContents)
+        .processFilenames(processFilenames)
+        .processDirectoryNames(processDirectoryNames)
+        .charset(charset)
+        .executorType(executorType)
+        .threads(threads)
+        .pipelineQueueSize(pipelineQueueSize)
+        .skipUnmatchedFiles(skipUnmatchedFiles)
+        .contentsReader(contentsReader)
+        .matchScope(matchScope)
+        .maxMatchLength(maxMatchLength)
+        .maxInMemorySize(maxInMemorySize)
+        .preserveLineEndings(preserveLineEndings)
+        .binaryHandling(binaryHandling)
+        .fingerprintIndex(fingerprintIndex)
+        .changedPaths(changedPaths)
+        .respectIgnoreFiles(respectIgnoreFiles)
+        .outputPaths(outputPaths)
+        .dryRunReport(dryRunReport);
+  }
+
+  public Path getBaseDir() {
+    return baseDir;
+  }
+
+  public boolean isRecursive() {
+    return recursive;
+  }
+
+  public List<ReplacementRule> getRules() {
+    return rules;
+  }
+
+  public boolean isLiteral() {
+    return literal;
+  }
+
+  public PathFilter getPathFilter() {
+    return pathFilter;
+  }
+
+  public List<Pattern> getExclusions() {
+    return exclusions;
+  }
+
+  public boolean isProcessFileContents() {
+    return processFileContents;
+  }
+
+  public boolean isProcessFilenames() {
+    return processFilenames;
+  }
+
+  public boolean isProcessDirectoryNames() {
+    return processDirectoryNames;
+  }
+
+  public Charset getCharset() {
+    return charset;
+  }
+
+  public ExecutorType getExecutorType() {
+    return executorType;
+  }
+
+  public int getThreads() {
+    return threads;
+  }
+
+  public int getPipelineQueueSize() {
+    return pipelineQueueSize;
+  }
+
+  public boolean isSkipUnmatchedFiles() {
+    return skipUnmatchedFiles;
+  }
+
+  public ContentsReader getContentsReader() {
+    return contentsReader;
+  }
+
+  public MatchScope getMatchScope() {
+    return matchScope;
+  }
+
+  public int getMaxMatchLength() {
+    return maxMatchLength;
+  }
+
+  public long getMaxInMemorySize() {
+    return maxInMemorySize;
+  }
+
+  public boolean isPreserveLineEndings() {
+    return preserveLineEndings;
+  }
+
+  public BinaryHandling getBinaryHandling() {
+    return binaryHandling;
+  }
+
+  public FingerprintIndex getFingerprintIndex() {
+    return fingerprintIndex;
+  }
+
+  public ChangedPaths getChangedPaths() {
+    return changedPaths;
+  }
+
+  public boolean isRespectIgnoreFiles() {
+    return respectIgnoreFiles;
+  }
+
+  public Set<Path> getOutputPaths() {
+    return outputPaths;
+  }
+
+  public DryRunReport getDryRunReport() {
+    return dryRunReport;
+  }
+
+  /**
+   * Builds the options of an execution, see the plugin parameters of the same names.
+   */
+  public static final class Builder {
+
+    private final Path baseDir;
+
+    private List<ReplacementRule> rules;
+
+    private boolean recursive = false;
+
+    private boolean literal = false;
+
+    private PathFilter pathFilter = PathFilter.compile(Collections.emptyList(), Collections.emptyList(),
+        Collections.emptyList());
+
+    private List<Pattern> exclusions = Collections.emptyList();
+
+    private boolean processFileContents = false;
+
+    private boolean processFilenames = false;
+
+    private boolean processDirectoryNames = false;
+
+    private Charset charset = Charset.defaultCharset();
+
+    private ExecutorType executorType = ExecutorType.PLATFORM;
+
+    private int threads = 1;
+
+    private int pipelineQueueSize = 0;
+
+    private boolean skipUnmatchedFiles = false;
+
+    private ContentsReader contentsReader = ContentsReader.NIO;
+
+    private MatchScope matchScope = MatchScope.LINE;
+
+    private int maxMatchLength = 65536;
+
+    private long maxInMemorySize = 64L * 1024 * 1024;
+
+    private boolean preserveLineEndings = false;
+
+    private BinaryHandling binaryHandling = BinaryHandling.SKIP;
+
+    private FingerprintIndex fingerprintIndex;
+
+    private ChangedPaths changedPaths;
+
+    private boolean respectIgnoreFiles = false;
+
+    private Set<Path> outputPaths = Collections.emptySet();
+
+    private DryRunReport dryRunReport;
+
+    private Builder(Path baseDir, List<ReplacementRule> rules) {
+      this.baseDir = baseDir;
+      this.rules = rules;
+    }
+
+    /**
+     * @param recursive whether to recurse further than the files and directories of baseDir
+     */
+    public Builder recursive(boolean recursive) {
+      this.recursive = recursive;
+      return this;
+    }
+
+    /**
+     * @param literal whether the rules are literals matched together by a single automaton
+     */
+    public Builder literal(boolean literal) {
+      this.literal = literal;
+      return this;
+    }
+
+    /**
+     * @param pathFilter the file masks, includes and excludes files must pass
+     */
+    public Builder pathFilter(PathFilter pathFilter) {
+      this.pathFilter = pathFilter;
+      return this;
+    }
+
+    /**
+     * @param exclusions the filename regexes to exclude
+     */
+    public Builder exclusions(List<Pattern> exclusions) {
+      this.exclusions = exclusions;
+      return this;
+    }
+
+    public Builder processFileContents(boolean processFileContents) {
+      this.processFileContents = processFileContents;
+      return this;
+    }
+
+    public Builder processFilenames(boolean processFilenames) {
+      this.processFilenames = processFilenames;
+      return this;
+    }
+
+    public Builder processDirectoryNames(boolean processDirectoryNames) {
+      this.processDirectoryNames = processDirectoryNames;
+      return this;
+    }
+
+    /**
+     * @param charset the encoding file contents are read and written with
+     */
+    public Builder charset(Charset charset) {
+      this.charset = charset;
+      return this;
+    }
+
+    /**
+     * @param executorType what file contents are processed on
+     */
+    public Builder executorType(ExecutorType executorType) {
+      this.executorType = executorType;
+      return this;
+    }
+
+    /**
+     * @param threads the number of threads file contents are processed on
+     */
+    public Builder threads(int threads) {
+      this.threads = threads;
+      return this;
+    }
+
+    /**
+     * @param pipelineQueueSize the capacity of the queues between the read, match and write stages of file
+     *                          contents, or 0 to run the stages of a file in one go
+     */
+    public Builder pipelineQueueSize(int pipelineQueueSize) {
+      this.pipelineQueueSize = pipelineQueueSize;
+      return this;
+    }
+
+    /**
+     * @param skipUnmatchedFiles whether to leave files without a match untouched instead of rewriting them
+     */
+    public Builder skipUnmatchedFiles(boolean skipUnmatchedFiles) {
+      this.skipUnmatchedFiles = skipUnmatchedFiles;
+      return this;
+    }
+
+    /**
+     * @param contentsReader how file contents are read
+     */
+    public Builder contentsReader(ContentsReader contentsReader) {
+      this.contentsReader = contentsReader;
+      return this;
+    }
+
+    /**
+     * @param matchScope what the rules are matched against within file contents
+     */
+    public Builder matchScope(MatchScope matchScope) {
+      this.matchScope = matchScope;
+      return this;
+    }
+
+    /**
+     * @param maxMatchLength the longest match guaranteed to be found with the streaming-window match scope
+     */
+    public Builder maxMatchLength(int maxMatchLength) {
+      this.maxMatchLength = maxMatchLength;
+      return this;
+    }
+
+    /**
+     * @param maxInMemorySize the total size of the files all threads may hold whole in memory at once
+     */
+    public Builder maxInMemorySize(long maxInMemorySize) {
+      this.maxInMemorySize = maxInMemorySize;
+      return this;
+    }
+
+    /**
+     * @param preserveLineEndings whether the line match scope keeps each line's terminator instead of writing \n
+     */
+    public Builder preserveLineEndings(boolean preserveLineEndings) {
+      this.preserveLineEndings = preserveLineEndings;
+      return this;
+    }
+
+    /**
+     * @param binaryHandling what is done with files sniffed as binary, or null to process them as text
+     */
+    public Builder binaryHandling(BinaryHandling binaryHandling) {
+      this.binaryHandling = binaryHandling;
+      return this;
+    }
+
+    /**
+     * @param fingerprintIndex the index of files left unchanged since the previous execution, or null
+     */
+    public Builder fingerprintIndex(FingerprintIndex fingerprintIndex) {
+      this.fingerprintIndex = fingerprintIndex;
+      return this;
+    }
+
+    /**
+     * @param changedPaths the only files to process and directories to walk, or null for all of them
+     */
+    public Builder changedPaths(ChangedPaths changedPaths) {
+      this.changedPaths = changedPaths;
+      return this;
+    }
+
+    /**
+     * @param respectIgnoreFiles whether to prune the paths ignored by .gitignore and .ignore files from the walk
+     */
+    public Builder respectIgnoreFiles(boolean respectIgnoreFiles) {
+      this.respectIgnoreFiles = respectIgnoreFiles;
+      return this;
+    }
+
+    /**
+     * @param outputPaths the absolute, normalized files and directories the execution writes to, which are never
+     *                    walked nor processed
+     */
+    public Builder outputPaths(Set<Path> outputPaths) {
+      this.outputPaths = outputPaths;
+      return this;
+    }
+
+    /**
+     * @param dryRunReport receives the matches instead of replacing them, or null to replace
+     */
+    public Builder dryRunReport(DryRunReport dryRunReport) {
+      this.dryRunReport = dryRunReport;
+      return this;
+    }
+
+    /**
+     * @param rules the replacement rules, applied in order
+     */
+    Builder rules(List<ReplacementRule> rules) {
+      this.rules = rules;
+      return this;
+    }
+
+    public ProcessOptions build() {
+      return new ProcessOptions(this);
+    }
+
+  }
+
+}
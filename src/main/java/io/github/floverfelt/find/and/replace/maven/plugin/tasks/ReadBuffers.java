@@ -0,0 +1,236 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * A direct read buffer, a decoder, and a growable char buffer holding the decoded file, plus a strict decoder
+ * sniffing for binary files, and the buffers lines are replaced with.
+ * <p>
+ * Not thread safe, each worker borrows its own from the pool of the processor.
+ */
+final class ReadBuffers {
+
+  static final int MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;
+
+  /**
+   * The largest buffer kept in the pool once a file was read, larger ones grown for a large file are dropped so a
+   * worker does not hold on to them for the rest of the execution.
+   */
+  static final int MAX_POOLED_BUFFER_SIZE = 4 * ContentsPass.READ_BUFFER_SIZE;
+
+  /**
+   * The number of leading bytes sniffed to tell binary files from text files.
+   */
+  private static final int BINARY_SNIFF_SIZE = 8 * 1024;
+
+  final LineBuffers lineBuffers = new LineBuffers();
+
+  private final ByteBuffer bytes = ByteBuffer.allocateDirect(ContentsPass.READ_BUFFER_SIZE);
+
+  private final CharsetDecoder decoder;
+
+  private CharBuffer chars = CharBuffer.allocate(ContentsPass.READ_BUFFER_SIZE);
+
+  /**
+   * The raw bytes of a file read whole, for the prefilter to search before decoding.
+   */
+  private byte[] rawBytes = new byte[0];
+
+  private final CharsetDecoder sniffDecoder;
+
+  private final CharBuffer sniffChars;
+
+  ReadBuffers(Charset charset) {
+    // Same malformed input handling as InputStreamReader
+    decoder = charset.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    sniffDecoder = charset.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPORT)
+        .onUnmappableCharacter(CodingErrorAction.REPORT);
+    sniffChars = CharBuffer.allocate((int) Math.ceil(BINARY_SNIFF_SIZE * (double) sniffDecoder.maxCharsPerByte()));
+  }
+
+  /**
+   * @param nulIsBinary whether a NUL byte marks a binary file
+   * @return whether the first bytes of the file hold a NUL byte, a sequence the charset cannot decode, or neither
+   */
+  Sniffed sniff(FileContents fileContents, boolean nulIsBinary) throws IOException {
+
+    try (ReadableByteChannel channel = fileContents.openChannel()) {
+
+      bytes.clear();
+      bytes.limit(BINARY_SNIFF_SIZE);
+      boolean endOfInput = false;
+      while (bytes.hasRemaining() && !endOfInput) {
+        endOfInput = channel.read(bytes) == -1;
+      }
+      bytes.flip();
+
+      for (int i = 0; nulIsBinary && i < bytes.limit(); i++) {
+        if (bytes.get(i) == 0) {
+          return Sniffed.NUL;
+        }
+      }
+
+      // A sequence cut by the end of the sniffed bytes is only malformed if the file ends there
+      sniffChars.clear();
+      sniffDecoder.reset();
+      return sniffDecoder.decode(bytes, sniffChars, endOfInput).isError() ? Sniffed.MALFORMED : Sniffed.TEXT;
+
+    }
+
+  }
+
+  /**
+   * @return the decoded contents, flipped for reading, or null if the file is too large to hold in a buffer
+   */
+  CharBuffer read(FileContents fileContents) throws IOException {
+
+    try (ReadableByteChannel channel = fileContents.openChannel()) {
+
+      double expectedChars = Math.ceil(fileContents.size() * (double) decoder.maxCharsPerByte());
+      if (expectedChars > MAX_BUFFER_SIZE) {
+        return null;
+      }
+      bytes.clear();
+      chars.clear();
+      decoder.reset();
+      ensureCapacity((int) expectedChars);
+
+      boolean endOfInput = false;
+      while (!endOfInput) {
+        endOfInput = channel.read(bytes) == -1;
+        bytes.flip();
+        while (decoder.decode(bytes, chars, endOfInput).isOverflow()) {
+          ensureCapacity((int) Math.min(MAX_BUFFER_SIZE, chars.capacity() * 2L));
+        }
+        bytes.compact();
+      }
+
+      CoderResult result = decoder.flush(chars);
+      while (result.isOverflow()) {
+        ensureCapacity((int) Math.min(MAX_BUFFER_SIZE, chars.capacity() * 2L));
+        result = decoder.flush(chars);
+      }
+
+      chars.flip();
+      return chars;
+
+    }
+
+  }
+
+  /**
+   * @return the number of raw bytes read whole, or -1 if the file is too large to hold in a buffer
+   */
+  int readRaw(FileContents fileContents) throws IOException {
+
+    try (ReadableByteChannel channel = fileContents.openChannel()) {
+
+      long size = fileContents.size();
+      if (Math.ceil(size * (double) decoder.maxCharsPerByte()) > MAX_BUFFER_SIZE) {
+        return -1;
+      }
+      if (rawBytes.length < size) {
+        rawBytes = new byte[(int) size];
+      }
+
+      ByteBuffer raw = ByteBuffer.wrap(rawBytes);
+      while (channel.read(raw) != -1) {
+        // A file growing while read
+        if (!raw.hasRemaining()) {
+          if (raw.capacity() >= MAX_BUFFER_SIZE) {
+            return -1;
+          }
+          rawBytes = Arrays.copyOf(rawBytes, (int) Math.min(MAX_BUFFER_SIZE, rawBytes.length * 2L + 1));
+          int position = raw.position();
+          raw = ByteBuffer.wrap(rawBytes);
+          raw.position(position);
+        }
+      }
+      return raw.position();
+
+    }
+
+  }
+
+  /**
+   * @return the raw bytes read by {@link #readRaw(FileContents)}
+   */
+  byte[] rawBytes() {
+    return rawBytes;
+  }
+
+  /**
+   * @return the raw bytes read by {@link #readRaw(FileContents)} decoded, flipped for reading
+   */
+  CharBuffer decode(int length) {
+
+    chars.clear();
+    decoder.reset();
+    ensureCapacity((int) Math.ceil(length * (double) decoder.maxCharsPerByte()));
+
+    ByteBuffer raw = ByteBuffer.wrap(rawBytes, 0, length);
+    while (decoder.decode(raw, chars, true).isOverflow()) {
+      ensureCapacity((int) Math.min(MAX_BUFFER_SIZE, chars.capacity() * 2L));
+    }
+    while (decoder.flush(chars).isOverflow()) {
+      ensureCapacity((int) Math.min(MAX_BUFFER_SIZE, chars.capacity() * 2L));
+    }
+
+    chars.flip();
+    return chars;
+
+  }
+
+  /**
+   * Drops the buffers grown beyond {@link #MAX_POOLED_BUFFER_SIZE} by a large file.
+   */
+  void shrink() {
+    if (chars.capacity() > MAX_POOLED_BUFFER_SIZE) {
+      chars = CharBuffer.allocate(ContentsPass.READ_BUFFER_SIZE);
+    }
+    if (rawBytes.length > MAX_POOLED_BUFFER_SIZE) {
+      rawBytes = new byte[0];
+    }
+    lineBuffers.shrink();
+  }
+
+  /**
+   * What the first bytes of a file look like.
+   */
+  enum Sniffed {
+
+    TEXT,
+
+    /**
+     * A NUL byte, which text in the charset never holds.
+     */
+    NUL,
+
+    /**
+     * A sequence the charset cannot decode, a binary file or text written in another encoding.
+     */
+    MALFORMED
+
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (chars.capacity() < capacity) {
+      CharBuffer grown = CharBuffer.allocate(capacity);
+      chars.flip();
+      grown.put(chars);
+      chars = grown;
+    }
+  }
+
+}
@@ -0,0 +1,205 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces line by line through a window of fixed size, so memory stays capped whatever the size of the file and
+ * of its lines. Lines fitting in the window are replaced whole. Longer lines are streamed through the rules
+ * chunk by chunk, where matches longer than maxMatchLength are not guaranteed to be found.
+ */
+final class ReaderLinePass extends ContentsPass {
+
+  private final FileContents fileContents;
+
+  private final List<ReplacementRule> fileRules;
+
+  private final LiteralReplacer literalReplacer;
+
+  private final LiteralPrefilter prefilter;
+
+  private final ProcessOptions options;
+
+  private final LineBuffers lineBuffers;
+
+  /**
+   * @param literalReplacer replaces the literal rules, or null to apply the rules as regexes
+   * @param prefilter       the prefilter of the regex rules, or null for literal rules
+   */
+  ReaderLinePass(FileContents fileContents, List<ReplacementRule> fileRules, LiteralReplacer literalReplacer,
+                 LiteralPrefilter prefilter, ProcessOptions options, LineBuffers lineBuffers) {
+    this.fileContents = fileContents;
+    this.fileRules = fileRules;
+    this.literalReplacer = literalReplacer;
+    this.prefilter = prefilter;
+    this.options = options;
+    this.lineBuffers = lineBuffers;
+  }
+
+  @Override
+  boolean run(OutputStream out, int[] counts, boolean untilFirstMatch) throws IOException {
+
+    boolean preserveLineEndings = options.isPreserveLineEndings();
+    int matches = 0;
+
+    try (InputStream fis = fileContents.openStream();
+         InputStreamReader isr = new InputStreamReader(fis, options.getCharset());
+         BufferedReader fileReader = new BufferedReader(isr);
+         Writer writer = writer(out, options.getCharset())) {
+
+      // Literals are held back while they may still match, the window always has room for more
+      char[] window = lineBuffers.window(Math.max(READ_BUFFER_SIZE, options.getMaxMatchLength() * 2)
+          + (literalReplacer != null ? literalReplacer.longestTerm() : 0));
+      CharBuffer windowChars = CharBuffer.wrap(window);
+      boolean[] disabled = new boolean[fileRules.size()];
+      RegionReplacer regionReplacer = new RegionReplacer(fileRules, literalReplacer, lineBuffers, disabled, counts);
+      LongLine longLine = null;
+      int length = 0;
+
+      for (boolean endOfInput = false; !endOfInput || length > 0; ) {
+
+        int read = endOfInput ? 0 : fileReader.read(window, length, window.length - length);
+        endOfInput = endOfInput || read == -1;
+        length += Math.max(0, read);
+
+        int start = 0;
+        while (start < length) {
+          int end = lineEnd(window, length, start);
+          // The line, or a \r\n terminator, may go on in the next chars
+          if (!endOfInput && (end == length || end == length - 1 && window[end] == '\r')) {
+            break;
+          }
+          int next = terminatorEnd(window, length, end);
+
+          if (longLine != null) {
+            matches += longLine.finish(window, start, end);
+            longLine = null;
+          } else {
+            boolean mayMatch = prefilter == null || prefilter.mayMatch(window, start, end);
+            matches += regionReplacer.replace(window, windowChars, start, end, mayMatch, writer);
+          }
+          if (untilFirstMatch && matches > 0) {
+            return true;
+          }
+
+          writeTerminator(writer, window, end, next, preserveLineEndings);
+          start = next;
+        }
+
+        // A line filling the whole window is streamed, keeping a trailing \r that may start a \r\n
+        if (start == 0 && length == window.length) {
+          if (longLine == null) {
+            longLine = new LongLine(writer, disabled, counts);
+          }
+          start = longLine.write(window, window[length - 1] == '\r' ? length - 1 : length);
+        }
+
+        System.arraycopy(window, start, window, 0, length - start);
+        length -= start;
+
+      }
+
+      // A long line running up to the end of the file
+      if (longLine != null) {
+        matches += longLine.finish(window, 0, 0);
+        if (!preserveLineEndings) {
+          writer.write('\n');
+        }
+      }
+
+    }
+
+    return matches > 0;
+
+  }
+
+  /**
+   * A line too long for the window, streamed through the literal replacer or a chain of streaming writers, one
+   * per rule that may still replace.
+   */
+  private final class LongLine {
+
+    private final Writer out;
+
+    private final boolean[] disabled;
+
+    private final int[] counts;
+
+    private final AhoCorasick.Match match = new AhoCorasick.Match();
+
+    private final List<StreamingReplaceWriter> replaceWriters = new ArrayList<>();
+
+    private final List<Integer> replaceWriterRules = new ArrayList<>();
+
+    private Writer writer;
+
+    private int literalMatches = 0;
+
+    private LongLine(Writer out, boolean[] disabled, int[] counts) {
+      this.out = out;
+      this.disabled = disabled;
+      this.counts = counts;
+
+      // Chain one writer per rule, the first rule receives the line and the last one writes it out
+      writer = out;
+      for (int i = fileRules.size() - 1; i >= 0 && literalReplacer == null; i--) {
+        if (!disabled[i]) {
+          StreamingReplaceWriter replaceWriter = new StreamingReplaceWriter(fileRules.get(i), writer,
+              options.getMaxMatchLength());
+          replaceWriters.add(0, replaceWriter);
+          replaceWriterRules.add(0, i);
+          writer = replaceWriter;
+        }
+      }
+    }
+
+    /**
+     * @return the index from which the chars were not consumed, as they may still be part of a literal match
+     */
+    private int write(char[] chars, int end) throws IOException {
+      if (literalReplacer != null) {
+        literalMatches += literalReplacer.replace(CharBuffer.wrap(chars), 0, end, false, disabled, counts, out,
+            match);
+        return match.getHoldFrom();
+      }
+      writer.write(chars, 0, end);
+      return end;
+    }
+
+    /**
+     * Writes the end of the line.
+     *
+     * @return the number of matches replaced within the line
+     */
+    private int finish(char[] chars, int start, int end) throws IOException {
+
+      if (literalReplacer != null) {
+        literalMatches += literalReplacer.replace(CharBuffer.wrap(chars), start, end, true, disabled, counts, out,
+            match);
+        return literalMatches;
+      }
+
+      writer.write(chars, start, end - start);
+      int replaced = 0;
+      for (int i = 0; i < replaceWriters.size(); i++) {
+        StreamingReplaceWriter replaceWriter = replaceWriters.get(i);
+        replaceWriter.finish();
+        int rule = replaceWriterRules.get(i);
+        counts[rule] += replaceWriter.getReplacedCount();
+        replaced += replaceWriter.getReplacedCount();
+        disabled[rule] = replaceWriter.hasReplaced() && !fileRules.get(rule).isReplaceAll();
+      }
+      return replaced;
+
+    }
+
+  }
+
+}
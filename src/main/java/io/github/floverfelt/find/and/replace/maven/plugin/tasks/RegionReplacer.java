@@ -0,0 +1,108 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.regex.Matcher;
+
+/**
+ * Applies the rules of a file to regions of its chars, a line or the whole contents, and writes the regions out.
+ * Literals are replaced all at once by the automaton, regexes one after the other, each matching the output of the
+ * previous one. A rule replacing only its first match is disabled once it replaced, for the rest of the file.
+ * <p>
+ * Regexes are matched through the matchers recycled by the line buffers and each rule replaces into the recycled
+ * buffer the previous rule did not, the last rule writing the region out directly, so nothing is allocated for a
+ * region.
+ * <p>
+ * Not thread safe, one per pass over a file.
+ */
+final class RegionReplacer {
+
+  private final List<ReplacementRule> fileRules;
+
+  private final LiteralReplacer literalReplacer;
+
+  private final LineBuffers lineBuffers;
+
+  private final boolean[] disabled;
+
+  private final int[] counts;
+
+  /**
+   * @param literalReplacer replaces the literal rules, or null to apply the rules as regexes
+   * @param disabled        the rules to ignore, indexed like the rules of the file
+   * @param counts          incremented by the matches of each rule, indexed like the rules of the file
+   */
+  RegionReplacer(List<ReplacementRule> fileRules, LiteralReplacer literalReplacer, LineBuffers lineBuffers,
+                 boolean[] disabled, int[] counts) {
+    this.fileRules = fileRules;
+    this.literalReplacer = literalReplacer;
+    this.lineBuffers = lineBuffers;
+    this.disabled = disabled;
+    this.counts = counts;
+  }
+
+  /**
+   * @param chars    the chars holding the region
+   * @param input    the same chars, for the literal replacer
+   * @param mayMatch whether the prefilter lets the region through, regexes are not even run otherwise
+   * @return the number of matches replaced within the region
+   */
+  int replace(char[] chars, CharSequence input, int start, int end, boolean mayMatch, Writer out)
+      throws IOException {
+
+    if (literalReplacer != null) {
+      return literalReplacer.replace(input, start, end, true, disabled, counts, out, lineBuffers.match);
+    }
+
+    if (!mayMatch) {
+      out.write(chars, start, end - start);
+      return 0;
+    }
+
+    CharSequence replacedRegion = lineBuffers.line.wrap(chars, start, end);
+    Matcher[] matchers = lineBuffers.matchers(fileRules);
+    int matches = 0;
+
+    int last = disabled.length - 1;
+    while (last >= 0 && disabled[last]) {
+      last--;
+    }
+
+    for (int i = 0; i < last; i++) {
+      if (disabled[i]) {
+        continue;
+      }
+      ReplacementRule rule = fileRules.get(i);
+      Matcher matcher = matchers[i].reset(replacedRegion);
+      if (matcher.find()) {
+        StringBuilder replaced = lineBuffers.otherBuffer(replacedRegion);
+        int ruleMatches = rule.replace(matcher, replacedRegion, replaced);
+        counts[i] += ruleMatches;
+        matches += ruleMatches;
+        replacedRegion = replaced;
+        disabled[i] = !rule.isReplaceAll();
+      }
+    }
+
+    // The last rule writes the region out as it replaces, rather than into yet another buffer
+    int appended = 0;
+    if (last >= 0) {
+      ReplacementRule rule = fileRules.get(last);
+      Matcher matcher = matchers[last].reset(replacedRegion);
+      while (!disabled[last] && matcher.find()) {
+        lineBuffers.write(out, replacedRegion, appended, matcher.start());
+        rule.getReplaceTemplate().writeTo(out, matcher, replacedRegion);
+        appended = matcher.end();
+        counts[last]++;
+        matches++;
+        disabled[last] = !rule.isReplaceAll();
+      }
+    }
+    lineBuffers.write(out, replacedRegion, appended, replacedRegion.length());
+
+    return matches;
+
+  }
+
+}
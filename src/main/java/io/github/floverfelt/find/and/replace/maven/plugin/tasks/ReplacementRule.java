@@ -0,0 +1,165 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A compiled findRegex and the value its matches are replaced with, optionally limited to files ending with one
+ * of its file masks.
+ */
+public class ReplacementRule {
+
+  private final Pattern findRegex;
+
+  private final String replaceValue;
+
+  private final ReplacementTemplate replaceTemplate;
+
+  private final boolean replaceAll;
+
+  private final List<String> fileMasks;
+
+  /**
+   * The literal every match contains, or null.
+   */
+  private final String requiredLiteral;
+
+  /**
+   * @param findRegex    the regex to find
+   * @param replaceValue the value to replace the found regex
+   * @param replaceAll   whether all matches are replaced or just the first one
+   * @param fileMasks    the file masks the rule is limited to, empty for all files
+   * @throws IllegalArgumentException if the replaceValue is malformed or refers to a group the regex does not have
+   */
+  public ReplacementRule(Pattern findRegex, String replaceValue, boolean replaceAll, List<String> fileMasks) {
+    this(findRegex, replaceValue, replaceAll, fileMasks, false);
+  }
+
+  private ReplacementRule(Pattern findRegex, String replaceValue, boolean replaceAll, List<String> fileMasks,
+                          boolean asciiCase) {
+    this.findRegex = findRegex;
+    this.replaceValue = replaceValue;
+    this.replaceTemplate = ReplacementTemplate.compile(replaceValue, findRegex, asciiCase);
+    this.replaceAll = replaceAll;
+    this.fileMasks = fileMasks;
+    this.requiredLiteral = LiteralPrefilter.requiredLiteral(findRegex);
+  }
+
+  public Pattern getFindRegex() {
+    return findRegex;
+  }
+
+  public String getReplaceValue() {
+    return replaceValue;
+  }
+
+  public boolean isReplaceAll() {
+    return replaceAll;
+  }
+
+  public List<String> getFileMasks() {
+    return fileMasks;
+  }
+
+  ReplacementTemplate getReplaceTemplate() {
+    return replaceTemplate;
+  }
+
+  String getRequiredLiteral() {
+    return requiredLiteral;
+  }
+
+  /**
+   * The same rule over raw bytes read as ISO-8859-1, one char per byte: the findRegex and replaceValue are encoded
+   * with the charset, so their non-ASCII chars stand for their encoded bytes. Case transforms only change ASCII
+   * letters.
+   *
+   * @param charset the charset the bytes are encoded with
+   * @return the rule matching the bytes
+   */
+  ReplacementRule toByteLevel(Charset charset) {
+    return new ReplacementRule(PatternCache.compile(toByteChars(findRegex.pattern(), charset), findRegex.flags()),
+        toByteChars(replaceValue, charset), replaceAll, fileMasks, true);
+  }
+
+  private static String toByteChars(String value, Charset charset) {
+    return new String(value.getBytes(charset), StandardCharsets.ISO_8859_1);
+  }
+
+  /**
+   * File masks are ignored for directories.
+   *
+   * @param file the file or directory
+   * @return whether the rule applies to it
+   */
+  boolean appliesTo(File file) {
+
+    if (fileMasks.isEmpty()) {
+      return true;
+    }
+
+    for (String fileMask : fileMasks) {
+      if (file.getName().endsWith(fileMask)) {
+        return true;
+      }
+    }
+
+    return false;
+
+  }
+
+  /**
+   * @param input the input
+   * @return the input with all or the first match replaced
+   */
+  String replace(CharSequence input) {
+    StringBuilder replaced = new StringBuilder(input.length());
+    replace(findRegex.matcher(input), input, replaced);
+    return replaced.toString();
+  }
+
+  /**
+   * Same as {@link #replace(CharSequence)}, also counting the replaced matches.
+   *
+   * @param matcher  a matcher of the findRegex, it is reset to the input first
+   * @param input    the input
+   * @param replaced receives the input with all or the first match replaced
+   * @return the number of replaced matches
+   */
+  int replace(Matcher matcher, CharSequence input, StringBuilder replaced) {
+
+    matcher.reset(input);
+    int appended = 0;
+    int count = 0;
+
+    while (matcher.find()) {
+      replaced.append(input, appended, matcher.start());
+      replaceTemplate.appendTo(replaced, matcher, input);
+      appended = matcher.end();
+      count++;
+      if (!replaceAll) {
+        break;
+      }
+    }
+
+    replaced.append(input, appended, input.length());
+    return count;
+
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder("ReplacementRule{");
+    sb.append("findRegex='").append(findRegex).append('\'');
+    sb.append(", replaceValue='").append(replaceValue).append('\'');
+    sb.append(", replaceAll=").append(replaceAll);
+    sb.append(", fileMasks=").append(fileMasks);
+    sb.append('}');
+    return sb.toString();
+  }
+
+}
@@ -0,0 +1,288 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A replaceValue compiled once into literal runs and group references, applied to each match without parsing it
+ * again.
+ * <p>
+ * The syntax is that of {@link Matcher#appendReplacement}: $n and ${name} refer to a group and a backslash escapes
+ * the next char. ${n} refers to a group by number as well, and a group may be transformed with ${group:upper},
+ * ${group:lower} or ${group:capitalize}, where capitalize only changes the first char to title case.
+ * <p>
+ * Immutable and thread safe.
+ */
+final class ReplacementTemplate {
+
+  private static final Pattern EMPTY_PATTERN = Pattern.compile("");
+
+  private final Segment[] segments;
+
+  private ReplacementTemplate(List<Segment> segments) {
+    this.segments = segments.toArray(new Segment[0]);
+  }
+
+  /**
+   * @param replaceValue the replaceValue, taken as it is for a findRegex compiled as a literal
+   * @param findRegex    the regex the groups are referred to in
+   * @param asciiCase    whether only ASCII letters change case, for chars that stand for raw bytes
+   * @return the compiled replaceValue
+   * @throws IllegalArgumentException if the replaceValue is malformed or refers to a group the regex does not have
+   */
+  static ReplacementTemplate compile(String replaceValue, Pattern findRegex, boolean asciiCase) {
+
+    List<Segment> segments = new ArrayList<>();
+    if ((findRegex.flags() & Pattern.LITERAL) != 0) {
+      segments.add(new Segment(replaceValue, 0, null, CaseTransform.NONE, asciiCase));
+      return new ReplacementTemplate(segments);
+    }
+
+    int groupCount = findRegex.matcher("").groupCount();
+    StringBuilder literal = new StringBuilder();
+
+    for (int i = 0; i < replaceValue.length(); ) {
+
+      char c = replaceValue.charAt(i++);
+
+      if (c == '\\') {
+        if (i == replaceValue.length()) {
+          throw new IllegalArgumentException("character to be escaped is missing");
+        }
+        literal.append(replaceValue.charAt(i++));
+        continue;
+      }
+      if (c != '$') {
+        literal.append(c);
+        continue;
+      }
+
+      if (i == replaceValue.length()) {
+        throw new IllegalArgumentException("Illegal group reference: group index is missing");
+      }
+      if (literal.length() > 0) {
+        segments.add(new Segment(literal.toString(), 0, null, CaseTransform.NONE, asciiCase));
+        literal.setLength(0);
+      }
+
+      if (replaceValue.charAt(i) == '{') {
+        int end = i + 1;
+        while (end < replaceValue.length() && isNameChar(replaceValue.charAt(end))) {
+          end++;
+        }
+        String group = replaceValue.substring(i + 1, end);
+        CaseTransform caseTransform = CaseTransform.NONE;
+        if (end < replaceValue.length() && replaceValue.charAt(end) == ':') {
+          int transformEnd = replaceValue.indexOf('}', end);
+          String transform = replaceValue.substring(end + 1, transformEnd < 0 ? replaceValue.length() : transformEnd);
+          caseTransform = CaseTransform.fromValue(transform);
+          if (caseTransform == null) {
+            throw new IllegalArgumentException("Unknown case transform {" + transform
+                + "}, expected upper, lower or capitalize");
+          }
+          end = transformEnd < 0 ? replaceValue.length() : transformEnd;
+        }
+        if (group.isEmpty()) {
+          throw new IllegalArgumentException("named capturing group has 0 length name");
+        }
+        if (end == replaceValue.length() || replaceValue.charAt(end) != '}') {
+          throw new IllegalArgumentException("named capturing group is missing trailing '}'");
+        }
+        segments.add(Character.isDigit(group.charAt(0))
+            ? new Segment(null, groupNumber(group, groupCount), null, caseTransform, asciiCase)
+            : new Segment(null, 0, groupName(group, findRegex), caseTransform, asciiCase));
+        i = end + 1;
+        continue;
+      }
+
+      // As many digits as still make up an existing group, like appendReplacement
+      int group = replaceValue.charAt(i) - '0';
+      if (group < 0 || group > 9) {
+        throw new IllegalArgumentException("Illegal group reference");
+      }
+      i++;
+      while (i < replaceValue.length() && Character.isDigit(replaceValue.charAt(i))
+          && group * 10 + replaceValue.charAt(i) - '0' <= groupCount) {
+        group = group * 10 + replaceValue.charAt(i++) - '0';
+      }
+      if (group > groupCount) {
+        throw new IllegalArgumentException("No group " + group);
+      }
+      segments.add(new Segment(null, group, null, CaseTransform.NONE, asciiCase));
+
+    }
+
+    if (literal.length() > 0) {
+      segments.add(new Segment(literal.toString(), 0, null, CaseTransform.NONE, asciiCase));
+    }
+    return new ReplacementTemplate(segments);
+
+  }
+
+  private static boolean isNameChar(char c) {
+    return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9';
+  }
+
+  private static int groupNumber(String group, int groupCount) {
+    for (int i = 0; i < group.length(); i++) {
+      if (!Character.isDigit(group.charAt(i))) {
+        throw new IllegalArgumentException("capturing group name {" + group + "} starts with digit character");
+      }
+    }
+    int number = group.length() > 9 ? Integer.MAX_VALUE : Integer.parseInt(group);
+    if (number > groupCount) {
+      throw new IllegalArgumentException("No group " + group);
+    }
+    return number;
+  }
+
+  /**
+   * A pattern only exposes its named groups to a matcher, which checks a name once it holds a match. So the name is
+   * looked up by a matcher holding the match of an empty pattern, swapped for the regex as usePattern keeps it.
+   */
+  private static String groupName(String group, Pattern findRegex) {
+    Matcher matcher = EMPTY_PATTERN.matcher("");
+    matcher.find();
+    try {
+      matcher.usePattern(findRegex).start(group);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("No group with name {" + group + "}", e);
+    }
+    return group;
+  }
+
+  /**
+   * Appends the replacement of the current match.
+   *
+   * @param out     receives the replacement
+   * @param matcher the matcher positioned on the match
+   * @param input   the input of the matcher, which the groups are copied from
+   */
+  void appendTo(StringBuilder out, Matcher matcher, CharSequence input) {
+    try {
+      apply(out, matcher, input);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Same as {@link #appendTo(StringBuilder, Matcher, CharSequence)}, writing the replacement out.
+   */
+  void writeTo(Writer out, Matcher matcher, CharSequence input) throws IOException {
+    apply(out, matcher, input);
+  }
+
+  private void apply(Appendable out, Matcher matcher, CharSequence input) throws IOException {
+
+    for (Segment segment : segments) {
+
+      if (segment.literal != null) {
+        out.append(segment.literal);
+        continue;
+      }
+
+      int start = segment.name != null ? matcher.start(segment.name) : matcher.start(segment.group);
+      int end = segment.name != null ? matcher.end(segment.name) : matcher.end(segment.group);
+      if (start < 0) {
+        continue;
+      }
+
+      if (segment.caseTransform != CaseTransform.NONE) {
+        segment.caseTransform.append(out, input, start, end, segment.asciiCase);
+      } else if (out instanceof Writer) {
+        ContentsPass.write((Writer) out, input, start, end);
+      } else {
+        out.append(input, start, end);
+      }
+
+    }
+
+  }
+
+  /**
+   * A literal run, or a reference to a group by number or name.
+   */
+  private static final class Segment {
+
+    private final String literal;
+
+    private final int group;
+
+    private final String name;
+
+    private final CaseTransform caseTransform;
+
+    private final boolean asciiCase;
+
+    private Segment(String literal, int group, String name, CaseTransform caseTransform, boolean asciiCase) {
+      this.literal = literal;
+      this.group = group;
+      this.name = name;
+      this.caseTransform = caseTransform;
+      this.asciiCase = asciiCase;
+    }
+
+  }
+
+  private enum CaseTransform {
+
+    NONE(""),
+    UPPER("upper"),
+    LOWER("lower"),
+    CAPITALIZE("capitalize");
+
+    private final String value;
+
+    CaseTransform(String value) {
+      this.value = value;
+    }
+
+    private static CaseTransform fromValue(String value) {
+      for (CaseTransform caseTransform : values()) {
+        if (caseTransform != NONE && caseTransform.value.equals(value)) {
+          return caseTransform;
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Appends the group code point by code point, so nothing is allocated.
+     */
+    private void append(Appendable out, CharSequence input, int start, int end, boolean asciiCase)
+        throws IOException {
+
+      for (int i = start; i < end; ) {
+        int codePoint = Character.codePointAt(input, i);
+        // A surrogate pair cut by the end of the group
+        if (i + Character.charCount(codePoint) > end) {
+          codePoint = input.charAt(i);
+        }
+        int mapped = codePoint;
+        if (!asciiCase || codePoint < 0x80) {
+          if (this == UPPER) {
+            mapped = Character.toUpperCase(codePoint);
+          } else if (this == LOWER) {
+            mapped = Character.toLowerCase(codePoint);
+          } else if (i == start) {
+            mapped = Character.toTitleCase(codePoint);
+          }
+        }
+        if (Character.isBmpCodePoint(mapped)) {
+          out.append((char) mapped);
+        } else {
+          out.append(Character.highSurrogate(mapped)).append(Character.lowSurrogate(mapped));
+        }
+        i += Character.charCount(codePoint);
+      }
+
+    }
+
+  }
+
+}
@@ -0,0 +1,180 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.regex.Matcher;
+
+/**
+ * A writer replacing the matches of a rule in everything written to it through a window of twice the maximum
+ * match length. Writers for several rules can be chained, each one writing into the next.
+ * <p>
+ * Text is passed on as soon as no match can start in it anymore. Matches that could still grow with more input
+ * are held back until the window is refilled, unless they already fill the whole window. Matches longer than
+ * the maximum match length are therefore not guaranteed to be found, and lookbehinds only see a few chars of the
+ * text that was already passed on.
+ * <p>
+ * Closing the writer replaces what is left in the window and closes the underlying writer, finishing it only
+ * replaces what is left and leaves the underlying writer open.
+ */
+class StreamingReplaceWriter extends Writer {
+
+  private static final int CONTEXT_LENGTH = 16;
+
+  private final ReplacementRule rule;
+
+  private final Writer out;
+
+  private final int maxMatchLength;
+
+  private final char[] window;
+
+  private final CharBuffer windowView;
+
+  private final Matcher matcher;
+
+  private int length = 0;
+
+  private int regionStart = 0;
+
+  private int replacedCount = 0;
+
+  private boolean finished = false;
+
+  private boolean emptyMatchAtRegionStart = false;
+
+  StreamingReplaceWriter(ReplacementRule rule, Writer out, int maxMatchLength) {
+    this.rule = rule;
+    this.out = out;
+    this.maxMatchLength = maxMatchLength;
+    this.window = new char[maxMatchLength * 2 + CONTEXT_LENGTH];
+    this.windowView = CharBuffer.wrap(window);
+
+    // The chars before the region are already passed on and only kept so anchors and lookbehinds see them
+    this.matcher = rule.getFindRegex().matcher(windowView);
+    this.matcher.useTransparentBounds(true);
+    this.matcher.useAnchoringBounds(false);
+  }
+
+  /**
+   * @return whether any match was replaced so far
+   */
+  boolean hasReplaced() {
+    return replacedCount > 0;
+  }
+
+  /**
+   * @return the number of matches replaced so far
+   */
+  int getReplacedCount() {
+    return replacedCount;
+  }
+
+  @Override
+  public void write(char[] cbuf, int off, int len) throws IOException {
+
+    while (len > 0) {
+
+      if (finished) {
+        out.write(cbuf, off, len);
+        return;
+      }
+
+      int copied = Math.min(len, window.length - length);
+      System.arraycopy(cbuf, off, window, length, copied);
+      length += copied;
+      off += copied;
+      len -= copied;
+
+      if (length == window.length) {
+        replaceWindow(false);
+      }
+
+    }
+
+  }
+
+  @Override
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    finish();
+    out.close();
+  }
+
+  /**
+   * Replaces what is left in the window as the end of the input, nothing may be written afterwards.
+   */
+  void finish() throws IOException {
+    replaceWindow(true);
+  }
+
+  private void replaceWindow(boolean endOfInput) throws IOException {
+
+    if (finished) {
+      out.write(window, regionStart, length - regionStart);
+      length = 0;
+      regionStart = 0;
+      return;
+    }
+
+    windowView.clear();
+    windowView.limit(length);
+    matcher.reset(windowView);
+    matcher.region(regionStart, length);
+
+    int appended = regionStart;
+    int heldBack = -1;
+
+    while (matcher.find()) {
+
+      // An empty match at the boundary was already replaced before the window moved
+      if (emptyMatchAtRegionStart && matcher.end() == regionStart) {
+        continue;
+      }
+
+      // A match that touched the end of the window may change once more input is written
+      boolean windowFull = length == window.length && matcher.start() == regionStart;
+      if (!endOfInput && !windowFull && matcher.hitEnd()) {
+        heldBack = matcher.start();
+        break;
+      }
+
+      out.write(window, appended, matcher.start() - appended);
+      rule.getReplaceTemplate().writeTo(out, matcher, windowView);
+      appended = matcher.end();
+      emptyMatchAtRegionStart = matcher.start() == matcher.end();
+      replacedCount++;
+
+      if (!rule.isReplaceAll()) {
+        finished = true;
+        break;
+      }
+
+    }
+
+    int boundary;
+    if (finished || endOfInput) {
+      boundary = length;
+    } else if (heldBack >= 0) {
+      boundary = Math.max(appended, Math.min(heldBack, length - maxMatchLength));
+    } else if (matcher.hitEnd()) {
+      boundary = Math.max(appended, length - maxMatchLength);
+    } else {
+      boundary = length;
+    }
+
+    emptyMatchAtRegionStart = emptyMatchAtRegionStart && appended == boundary;
+    out.write(window, appended, boundary - appended);
+
+    int keepFrom = Math.max(0, boundary - CONTEXT_LENGTH);
+    System.arraycopy(window, keepFrom, window, 0, length - keepFrom);
+    length -= keepFrom;
+    regionStart = boundary - keepFrom;
+
+  }
+
+}
@@ -0,0 +1,115 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.List;
+
+/**
+ * Streams the file through a chain of {@link StreamingReplaceWriter}, one per rule, so memory stays capped whatever
+ * the size of the file. Matches longer than maxMatchLength are not guaranteed to be found.
+ * <p>
+ * Literal matches never span more chars than the longest term, so literals are replaced through a window of the
+ * read buffer size plus the longest term instead, only carrying that many chars over from one read to the next.
+ */
+final class StreamingWindowPass extends ContentsPass {
+
+  private final FileContents fileContents;
+
+  private final List<ReplacementRule> fileRules;
+
+  private final LiteralReplacer literalReplacer;
+
+  private final ProcessOptions options;
+
+  /**
+   * @param literalReplacer replaces the literal rules, or null to apply the rules as regexes
+   */
+  StreamingWindowPass(FileContents fileContents, List<ReplacementRule> fileRules, LiteralReplacer literalReplacer,
+                      ProcessOptions options) {
+    this.fileContents = fileContents;
+    this.fileRules = fileRules;
+    this.literalReplacer = literalReplacer;
+    this.options = options;
+  }
+
+  @Override
+  boolean run(OutputStream out, int[] counts, boolean untilFirstMatch) throws IOException {
+
+    try (InputStream fis = fileContents.openStream();
+         InputStreamReader isr = new InputStreamReader(fis, options.getCharset());
+         Writer writer = writer(out, options.getCharset())) {
+
+      if (literalReplacer != null) {
+        return runLiterals(isr, writer, counts, untilFirstMatch);
+      }
+
+      // Chain one writer per rule, the first rule receives the file contents and the last one writes the file
+      StreamingReplaceWriter[] replaceWriters = new StreamingReplaceWriter[fileRules.size()];
+      Writer chain = writer;
+      for (int i = fileRules.size() - 1; i >= 0; i--) {
+        replaceWriters[i] = new StreamingReplaceWriter(fileRules.get(i), chain, options.getMaxMatchLength());
+        chain = replaceWriters[i];
+      }
+
+      char[] buffer = new char[READ_BUFFER_SIZE];
+      for (int read = isr.read(buffer); read != -1; read = isr.read(buffer)) {
+        chain.write(buffer, 0, read);
+        if (untilFirstMatch && hasReplaced(replaceWriters)) {
+          return true;
+        }
+      }
+      chain.close();
+
+      for (int i = 0; i < replaceWriters.length; i++) {
+        counts[i] += replaceWriters[i].getReplacedCount();
+      }
+      return hasReplaced(replaceWriters);
+
+    }
+
+  }
+
+  private boolean runLiterals(Reader reader, Writer writer, int[] counts, boolean untilFirstMatch)
+      throws IOException {
+
+    char[] window = new char[READ_BUFFER_SIZE + literalReplacer.longestTerm()];
+    CharBuffer windowChars = CharBuffer.wrap(window);
+    AhoCorasick.Match match = new AhoCorasick.Match();
+    boolean[] disabled = new boolean[fileRules.size()];
+    boolean matched = false;
+    int length = 0;
+
+    for (boolean endOfInput = false; !endOfInput; ) {
+      int read = reader.read(window, length, window.length - length);
+      endOfInput = read == -1;
+      length += endOfInput ? 0 : read;
+
+      matched |= literalReplacer.replace(windowChars, 0, length, endOfInput, disabled, counts, writer, match) > 0;
+      if (untilFirstMatch && matched) {
+        return true;
+      }
+
+      int held = match.getHoldFrom();
+      System.arraycopy(window, held, window, 0, length - held);
+      length -= held;
+    }
+
+    return matched;
+
+  }
+
+  private static boolean hasReplaced(StreamingReplaceWriter[] replaceWriters) {
+    for (StreamingReplaceWriter replaceWriter : replaceWriters) {
+      if (replaceWriter.hasReplaced()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+}
@@ -0,0 +1,104 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual threads looked up by reflection, as the plugin is built for Java 8 and they only exist from Java 21 on.
+ */
+final class VirtualThreads {
+
+  private static final Method OF_VIRTUAL = method(Thread.class, "ofVirtual");
+
+  private static final Method NAME = method(builderClass(), "name", String.class, long.class);
+
+  private static final Method FACTORY = method(builderClass(), "factory");
+
+  private static final Method NEW_THREAD_PER_TASK_EXECUTOR = method(Executors.class, "newThreadPerTaskExecutor",
+      ThreadFactory.class);
+
+  private static final boolean AVAILABLE = probe();
+
+  private VirtualThreads() {
+    // do not instantiate
+  }
+
+  /**
+   * @return whether the running Java version has virtual threads
+   */
+  static boolean isAvailable() {
+    return AVAILABLE;
+  }
+
+  /**
+   * Java 19 and 20 have virtual threads as a preview feature, which throws unless enabled.
+   */
+  private static boolean probe() {
+    if (OF_VIRTUAL == null || NAME == null || FACTORY == null || NEW_THREAD_PER_TASK_EXECUTOR == null) {
+      return false;
+    }
+    try {
+      factory("find-and-replace-probe-");
+      return true;
+    } catch (UnsupportedOperationException e) {
+      return false;
+    }
+  }
+
+  /**
+   * @param namePrefix the prefix of the thread names, followed by a counter
+   * @return a factory of virtual threads, which are always daemon threads
+   */
+  static ThreadFactory factory(String namePrefix) {
+    Object builder = invoke(OF_VIRTUAL, null);
+    return (ThreadFactory) invoke(FACTORY, invoke(NAME, builder, namePrefix, 1L));
+  }
+
+  /**
+   * @param namePrefix the prefix of the thread names, followed by a counter
+   * @return an executor starting a new virtual thread for every task
+   */
+  static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+    return (ExecutorService) invoke(NEW_THREAD_PER_TASK_EXECUTOR, null, factory(namePrefix));
+  }
+
+  private static Class<?> builderClass() {
+    try {
+      return Class.forName("java.lang.Thread$Builder");
+    } catch (ClassNotFoundException e) {
+      return null;
+    }
+  }
+
+  private static Method method(Class<?> type, String name, Class<?>... parameterTypes) {
+    if (type == null) {
+      return null;
+    }
+    try {
+      return type.getMethod(name, parameterTypes);
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  private static Object invoke(Method method, Object target, Object... args) {
+    if (method == null) {
+      throw new UnsupportedOperationException("Virtual threads need Java 21 or later.");
+    }
+    try {
+      return method.invoke(target, args);
+    } catch (IllegalAccessException e) {
+      throw new UnsupportedOperationException("Virtual threads are not accessible.", e);
+    } catch (InvocationTargetException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+
+}
@@ -0,0 +1,151 @@
+package io.github.floverfelt.find.and.replace.maven.plugin.tasks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.List;
+
+/**
+ * Reads the file whole through nio into the read buffers, then applies the rules to all of its contents at once
+ * with the file match scope, or line by line using regions with the line match scope, so nothing is allocated for
+ * lines without a match.
+ * <p>
+ * Regex rules only run on the lines, or files, holding the literal every match of a rule contains, see
+ * {@link LiteralPrefilter}. Skipping unmatched files, the raw bytes are searched for those literals first where the
+ * charset allows it, so a file holding none is not even decoded.
+ * <p>
+ * The file is reserved from the memory budget shared by all workers until the pass is closed. With the file match
+ * scope a worker waits for room, with the line match scope it rather reads the file line by line, which writes the
+ * same contents.
+ */
+final class WholeContentsPass extends ContentsPass {
+
+  private final List<ReplacementRule> fileRules;
+
+  private final LiteralReplacer literalReplacer;
+
+  private final LiteralPrefilter prefilter;
+
+  private final ProcessOptions options;
+
+  private final ReadBuffers readBuffers;
+
+  private final MemoryBudget memoryBudget;
+
+  private final long reservedSize;
+
+  /**
+   * The decoded contents, or null while only the raw bytes were read.
+   */
+  private CharBuffer contents;
+
+  private int rawLength;
+
+  private WholeContentsPass(List<ReplacementRule> fileRules, LiteralReplacer literalReplacer,
+                            LiteralPrefilter prefilter, ProcessOptions options, ReadBuffers readBuffers,
+                            MemoryBudget memoryBudget, long reservedSize) {
+    this.fileRules = fileRules;
+    this.literalReplacer = literalReplacer;
+    this.prefilter = prefilter;
+    this.options = options;
+    this.readBuffers = readBuffers;
+    this.memoryBudget = memoryBudget;
+    this.reservedSize = reservedSize;
+  }
+
+  /**
+   * Reads the file into the read buffers, which the pass holds on to until done with the file.
+   *
+   * @param literalReplacer replaces the literal rules, or null to apply the rules as regexes
+   * @param prefilter       the prefilter of the regex rules, or null for literal rules
+   * @return the pass, or null if the file is too large to hold in a buffer or does not fit in the memory budget
+   */
+  static WholeContentsPass open(FileContents fileContents, List<ReplacementRule> fileRules,
+                                LiteralReplacer literalReplacer, LiteralPrefilter prefilter, ProcessOptions options,
+                                ReadBuffers readBuffers, MemoryBudget memoryBudget) throws IOException {
+
+    long size = fileContents.size();
+    if (!memoryBudget.reserve(size, options.getMatchScope() == MatchScope.FILE)) {
+      return null;
+    }
+
+    WholeContentsPass pass = new WholeContentsPass(fileRules, literalReplacer, prefilter, options, readBuffers,
+        memoryBudget, size);
+    boolean read = false;
+
+    try {
+      if (!options.isSkipUnmatchedFiles() || prefilter == null || !prefilter.searchesBytes()) {
+        pass.contents = readBuffers.read(fileContents);
+        read = pass.contents != null;
+      } else {
+        pass.rawLength = readBuffers.readRaw(fileContents);
+        read = pass.rawLength >= 0;
+        if (read && prefilter.mayMatch(readBuffers.rawBytes(), 0, pass.rawLength)) {
+          pass.contents = readBuffers.decode(pass.rawLength);
+        }
+      }
+    } finally {
+      if (!read) {
+        pass.close();
+      }
+    }
+
+    return read ? pass : null;
+
+  }
+
+  @Override
+  boolean run(OutputStream out, int[] counts, boolean untilFirstMatch) throws IOException {
+
+    // The raw bytes hold none of the literals, so no rule matches
+    if (contents == null && out == null) {
+      return false;
+    }
+    if (contents == null) {
+      contents = readBuffers.decode(rawLength);
+    }
+
+    char[] chars = contents.array();
+    int length = contents.limit();
+    boolean lines = options.getMatchScope() == MatchScope.LINE;
+    RegionReplacer regionReplacer = new RegionReplacer(fileRules, literalReplacer, readBuffers.lineBuffers,
+        new boolean[fileRules.size()], counts);
+    int[] hits = prefilter != null ? prefilter.newHits() : null;
+    boolean matched = false;
+
+    try (Writer writer = writer(out, options.getCharset())) {
+
+      for (int start = 0, next; start < length; start = next) {
+
+        int end = lines ? lineEnd(chars, length, start) : length;
+        next = lines ? terminatorEnd(chars, length, end) : length;
+
+        // Regions before the next occurrence of a literal are written as they are, none follows the last one
+        int hit = prefilter != null ? prefilter.nextHit(chars, start, length, hits) : start;
+        if (hit < 0 && out == null) {
+          return matched;
+        }
+        matched |= regionReplacer.replace(chars, contents, start, end, hit >= 0 && hit < end, writer) > 0;
+        if (untilFirstMatch && matched) {
+          return true;
+        }
+
+        if (lines) {
+          writeTerminator(writer, chars, end, next, options.isPreserveLineEndings());
+        }
+
+      }
+
+    }
+
+    return matched;
+
+  }
+
+  @Override
+  public void close() {
+    memoryBudget.release(reservedSize);
+  }
+
+}
@@ -1,8 +1,11 @@
 package io.github.floverfelt.find.and.replace.maven.plugin;
 
+import io.github.floverfelt.find.and.replace.maven.plugin.tasks.ReplacementRule;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
 import org.junit.After;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -13,6 +16,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.net.URISyntaxException;
@@ -22,11 +26,23 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static junit.framework.TestCase.assertEquals;
 import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertSame;
 import static junit.framework.TestCase.assertTrue;
 
 /**
@@ -184,6 +200,8 @@ public class FindAndReplaceMojoTest {
     Path firstDir = Files.createDirectory(Paths.get(runningTestsPath.toString(), "test-top-directory"));
     String secondDirName = "test-sub-directory";
     Files.createDirectories(Paths.get(firstDir.toString(), secondDirName));
+    Path siblingDir = Files.createDirectory(Paths.get(runningTestsPath.toString(), "sibling"));
+    Files.createDirectories(Paths.get(siblingDir.toString(), secondDirName));
 
     setFieldValue(findAndReplaceMojo, "findRegex", "-");
     setFieldValue(findAndReplaceMojo, "replaceValue", "_");
@@ -195,12 +213,16 @@ public class FindAndReplaceMojoTest {
 
     findAndReplaceMojo.execute();
 
-    Path expectedSecondDirPath = Paths.get(firstDir.toString(), "test_sub_directory");
+    // Excluded directories are not descended into
+    Path expectedSecondDirPath = Paths.get(firstDir.toString(), secondDirName);
+    Path expectedSiblingSubDirPath = Paths.get(siblingDir.toString(), "test_sub_directory");
 
     assertTrue(Files.exists(firstDir));
 
     assertTrue(Files.exists(expectedSecondDirPath));
 
+    assertTrue(Files.exists(expectedSiblingSubDirPath));
+
   }
 
   @Test
@@ -210,6 +232,8 @@ public class FindAndReplaceMojoTest {
     Path firstDir = Files.createDirectory(Paths.get(runningTestsPath.toString(), "test-top-directory"));
     String secondDirName = "test-sub-directory";
     Files.createDirectories(Paths.get(firstDir.toString(), secondDirName));
+    Path siblingDir = Files.createDirectory(Paths.get(runningTestsPath.toString(), "sibling"));
+    Files.createDirectories(Paths.get(siblingDir.toString(), secondDirName));
 
     setFieldValue(findAndReplaceMojo, "findRegex", "-");
     setFieldValue(findAndReplaceMojo, "replaceValue", "_");
@@ -221,12 +245,16 @@ public class FindAndReplaceMojoTest {
 
     findAndReplaceMojo.execute();
 
-    Path expectedSecondDirPath = Paths.get(firstDir.toString(), "test_sub-directory");
+    // Excluded directories are not descended into
+    Path expectedSecondDirPath = Paths.get(firstDir.toString(), secondDirName);
+    Path expectedSiblingSubDirPath = Paths.get(siblingDir.toString(), "test_sub-directory");
 
     assertTrue(Files.exists(firstDir));
 
     assertTrue(Files.exists(expectedSecondDirPath));
 
+    assertTrue(Files.exists(expectedSiblingSubDirPath));
+
   }
 
   @Test
@@ -1051,11 +1079,1423 @@ public class FindAndReplaceMojoTest {
 
   }
 
-  private void setFieldValue(Object obj, String fieldName, Object val)
-          throws NoSuchFieldException, IllegalAccessException {
-    Field field = obj.getClass().getDeclaredField(fieldName);
-    field.setAccessible(true);
-    field.set(obj, val);
+  @Test
+  public void testFileContentsRecursiveThreads() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    Path firstDir = Files.createDirectory(Paths.get(runningTestsPath.toString(), "test-directory"));
+    Path testFileXmlMoved = Files.copy(xmlTestFile, Paths.get(firstDir.toString(), xmlTestFile.toFile().getName()));
+    Path testFileYmlMoved = Files.copy(ymlTestFile, Paths.get(firstDir.toString(), ymlTestFile.toFile().getName()));
+    Path testFileTxtMoved = Files.copy(textTestFile, Paths.get(firstDir.toString(), textTestFile.toFile().getName()));
+
+    setFieldValue(findAndReplaceMojo, "findRegex", "asdf");
+    String replaceValue = "value successfully replaced";
+    setFieldValue(findAndReplaceMojo, "replaceValue", replaceValue);
+    setFieldValue(findAndReplaceMojo, "processFileContents", true);
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents,filenames");
+    setFieldValue(findAndReplaceMojo, "recursive", true);
+    setFieldValue(findAndReplaceMojo, "replaceAll", true);
+    setFieldValue(findAndReplaceMojo, "threads", "4");
+
+    findAndReplaceMojo.execute();
+
+    assertTrue(fileContains(textTestFile.toFile(), replaceValue));
+    assertTrue(fileContains(xmlTestFile.toFile(), replaceValue));
+    assertTrue(fileContains(ymlTestFile.toFile(), replaceValue));
+    assertTrue(fileContains(testFileXmlMoved.toFile(), replaceValue));
+    assertTrue(fileContains(testFileYmlMoved.toFile(), replaceValue));
+    assertTrue(fileContains(testFileTxtMoved.toFile(), replaceValue));
+
+    assertFalse(fileContains(textTestFile.toFile(), "asdf"));
+    assertFalse(fileContains(xmlTestFile.toFile(), "asdf"));
+    assertFalse(fileContains(ymlTestFile.toFile(), "asdf"));
+    assertFalse(fileContains(testFileXmlMoved.toFile(), "asdf"));
+    assertFalse(fileContains(testFileYmlMoved.toFile(), "asdf"));
+    assertFalse(fileContains(testFileTxtMoved.toFile(), "asdf"));
+
+  }
+
+  @Test
+  public void testFileContentsThreadsPerCore() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    setFieldValue(findAndReplaceMojo, "findRegex", "asdf");
+    String replaceValue = "value successfully replaced";
+    setFieldValue(findAndReplaceMojo, "replaceValue", replaceValue);
+    setFieldValue(findAndReplaceMojo, "processFileContents", true);
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+    setFieldValue(findAndReplaceMojo, "replaceAll", true);
+    setFieldValue(findAndReplaceMojo, "threads", "1C");
+
+    findAndReplaceMojo.execute();
+
+    assertTrue(fileContains(textTestFile.toFile(), replaceValue));
+    assertTrue(fileContains(xmlTestFile.toFile(), replaceValue));
+    assertTrue(fileContains(ymlTestFile.toFile(), replaceValue));
+
+    assertFalse(fileContains(textTestFile.toFile(), "asdf"));
+    assertFalse(fileContains(xmlTestFile.toFile(), "asdf"));
+    assertFalse(fileContains(ymlTestFile.toFile(), "asdf"));
+
+  }
+
+  @Test(expected = MojoExecutionException.class)
+  public void testInvalidThreads() throws NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    setFieldValue(findAndReplaceMojo, "findRegex", "asdf");
+    setFieldValue(findAndReplaceMojo, "replaceValue", "");
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+    setFieldValue(findAndReplaceMojo, "threads", "many");
+
+    findAndReplaceMojo.execute();
+
+  }
+
+  @Test
+  public void testFileContentsSkipUnmatchedFiles() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    Path unmatchedFile = Files.write(Paths.get(runningTestsPath.toString(), "unmatched.txt"),
+            "no match here\r\nstill nothing".getBytes(StandardCharsets.UTF_8));
+    FileTime lastModified = FileTime.fromMillis(1000000000000L);
+    Files.setLastModifiedTime(unmatchedFile, lastModified);
+
+    setFieldValue(findAndReplaceMojo, "findRegex", "asdf");
+    String replaceValue = "value successfully replaced";
+    setFieldValue(findAndReplaceMojo, "replaceValue", replaceValue);
+    setFieldValue(findAndReplaceMojo, "processFileContents", true);
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+    setFieldValue(findAndReplaceMojo, "replaceAll", true);
+    setFieldValue(findAndReplaceMojo, "skipUnmatchedFiles", true);
+
+    findAndReplaceMojo.execute();
+
+    assertTrue(fileContains(textTestFile.toFile(), replaceValue));
+    assertFalse(fileContains(textTestFile.toFile(), "asdf"));
+
+    assertEquals("no match here\r\nstill nothing", new String(Files.readAllBytes(unmatchedFile), StandardCharsets.UTF_8));
+    assertEquals(lastModified, Files.getLastModifiedTime(unmatchedFile));
+
+  }
+
+  @Test
+  public void testFileContentsNioReaderLineTerminators() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    Path mixedFile = Files.write(Paths.get(runningTestsPath.toString(), "mixed.txt"),
+            "one asdf\r\ntwo\rthree\n\nasdf".getBytes(StandardCharsets.UTF_8));
+
+    setFieldValue(findAndReplaceMojo, "findRegex", "asdf");
+    setFieldValue(findAndReplaceMojo, "replaceValue", "replaced");
+    setFieldValue(findAndReplaceMojo, "processFileContents", true);
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+    setFieldValue(findAndReplaceMojo, "encoding", "UTF-8");
+    setFieldValue(findAndReplaceMojo, "replaceAll", true);
+    setFieldValue(findAndReplaceMojo, "contentsReader", "nio");
+
+    findAndReplaceMojo.execute();
+
+    assertEquals("one replaced\ntwo\nthree\n\nreplaced\n", new String(Files.readAllBytes(mixedFile), StandardCharsets.UTF_8));
+
+  }
+
+  @Test
+  public void testFileContentsBufferedReaderLineTerminators() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    Path mixedFile = Files.write(Paths.get(runningTestsPath.toString(), "mixed.txt"),
+            "one asdf\r\ntwo\rthree\n\nasdf".getBytes(StandardCharsets.UTF_8));
+
+    setFieldValue(findAndReplaceMojo, "findRegex", "asdf");
+    setFieldValue(findAndReplaceMojo, "replaceValue", "replaced");
+    setFieldValue(findAndReplaceMojo, "processFileContents", true);
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+    setFieldValue(findAndReplaceMojo, "encoding", "UTF-8");
+    setFieldValue(findAndReplaceMojo, "replaceAll", true);
+    setFieldValue(findAndReplaceMojo, "contentsReader", "buffered");
+
+    findAndReplaceMojo.execute();
+
+    assertEquals("one replaced\ntwo\nthree\n\nreplaced\n", new String(Files.readAllBytes(mixedFile), StandardCharsets.UTF_8));
+
+  }
+
+  @Test
+  public void testFileContentsMatchScopeFile() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    Path multiLineFile = Files.write(Paths.get(runningTestsPath.toString(), "multi-line.xml"),
+            "<a>\r\n  <b>asdf</b>\r\n</a>\r\n<c/>".getBytes(StandardCharsets.UTF_8));
+
+    setFieldValue(findAndReplaceMojo, "findRegex", "(?s)<a>.*?</a>");
+    setFieldValue(findAndReplaceMojo, "replaceValue", "<a/>");
+    setFieldValue(findAndReplaceMojo, "processFileContents", true);
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+    setFieldValue(findAndReplaceMojo, "encoding", "UTF-8");
+    setFieldValue(findAndReplaceMojo, "replaceAll", true);
+    setFieldValue(findAndReplaceMojo, "matchScope", "file");
+
+    findAndReplaceMojo.execute();
+
+    assertEquals("<a/>\r\n<c/>", new String(Files.readAllBytes(multiLineFile), StandardCharsets.UTF_8));
+
+  }
+
+  @Test
+  public void testFileContentsMatchScopeStreamingWindow() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    StringBuilder contents = new StringBuilder();
+    for (int i = 0; i < 2000; i++) {
+      contents.append("line ").append(i).append(" <a>\n").append(i).append("</a>\r\n");
+    }
+    Path largeFile = Files.write(Paths.get(runningTestsPath.toString(), "large.txt"),
+            contents.toString().getBytes(StandardCharsets.UTF_8));
+
+    String findRegex = "(?m)^line (\\d+) <a>\\n\\d+</a>";
+    setFieldValue(findAndReplaceMojo, "findRegex", findRegex);
+    setFieldValue(findAndReplaceMojo, "replaceValue", "<a id=\"$1\"/>");
+    setFieldValue(findAndReplaceMojo, "processFileContents", true);
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+    setFieldValue(findAndReplaceMojo, "encoding", "UTF-8");
+    setFieldValue(findAndReplaceMojo, "replaceAll", true);
+    setFieldValue(findAndReplaceMojo, "matchScope", "streaming-window");
+    setFieldValue(findAndReplaceMojo, "maxMatchLength", 32);
+
+    findAndReplaceMojo.execute();
+
+    assertEquals(contents.toString().replaceAll(findRegex, "<a id=\"$1\"/>"),
+            new String(Files.readAllBytes(largeFile), StandardCharsets.UTF_8));
+
+  }
+
+  @Test
+  public void testFileContentsMatchScopeStreamingWindowReplaceFirst() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    StringBuilder contents = new StringBuilder();
+    for (int i = 0; i < 2000; i++) {
+      contents.append("asdf ").append(i).append('\n');
+    }
+    Path largeFile = Files.write(Paths.get(runningTestsPath.toString(), "large.txt"),
+            contents.toString().getBytes(StandardCharsets.UTF_8));
+
+    setFieldValue(findAndReplaceMojo, "findRegex", "asdf 1\\d*");
+    setFieldValue(findAndReplaceMojo, "replaceValue", "replaced");
+    setFieldValue(findAndReplaceMojo, "processFileContents", true);
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+    setFieldValue(findAndReplaceMojo, "encoding", "UTF-8");
+    setFieldValue(findAndReplaceMojo, "replaceAll", false);
+    setFieldValue(findAndReplaceMojo, "matchScope", "streaming-window");
+    setFieldValue(findAndReplaceMojo, "maxMatchLength", 16);
+
+    findAndReplaceMojo.execute();
+
+    assertEquals(contents.toString().replaceFirst("asdf 1\\d*", "replaced"),
+            new String(Files.readAllBytes(largeFile), StandardCharsets.UTF_8));
+
+  }
+
+  @Test
+  public void testFileContentsPreserveLineEndings() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    Path mixedFile = Files.write(Paths.get(runningTestsPath.toString(), "mixed.txt"),
+            "one asdf\r\ntwo\rthree\n\nasdf".getBytes(StandardCharsets.UTF_8));
+
+    setFieldValue(findAndReplaceMojo, "findRegex", "asdf");
+    setFieldValue(findAndReplaceMojo, "replaceValue", "replaced");
+    setFieldValue(findAndReplaceMojo, "processFileContents", true);
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+    setFieldValue(findAndReplaceMojo, "encoding", "UTF-8");
+    setFieldValue(findAndReplaceMojo, "replaceAll", true);
+    setFieldValue(findAndReplaceMojo, "preserveLineEndings", true);
+
+    findAndReplaceMojo.execute();
+
+    assertEquals("one replaced\r\ntwo\rthree\n\nreplaced", new String(Files.readAllBytes(mixedFile), StandardCharsets.UTF_8));
+
+  }
+
+  @Test
+  public void testFileContentsPreserveLineEndingsBufferedReader() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    Path mixedFile = Files.write(Paths.get(runningTestsPath.toString(), "mixed.txt"),
+            "one asdf\r\ntwo\rthree\n\nasdf\r".getBytes(StandardCharsets.UTF_8));
+
+    setFieldValue(findAndReplaceMojo, "findRegex", "asdf");
+    setFieldValue(findAndReplaceMojo, "replaceValue", "replaced");
+    setFieldValue(findAndReplaceMojo, "processFileContents", true);
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+    setFieldValue(findAndReplaceMojo, "encoding", "UTF-8");
+    setFieldValue(findAndReplaceMojo, "replaceAll", true);
+    setFieldValue(findAndReplaceMojo, "preserveLineEndings", true);
+    setFieldValue(findAndReplaceMojo, "contentsReader", "buffered");
+
+    findAndReplaceMojo.execute();
+
+    assertEquals("one replaced\r\ntwo\rthree\n\nreplaced\r", new String(Files.readAllBytes(mixedFile), StandardCharsets.UTF_8));
+
+  }
+
+  @Test
+  public void testFileContentsIncremental() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    setFieldValue(findAndReplaceMojo, "findRegex", "asdf");
+    String replaceValue = "done";
+    setFieldValue(findAndReplaceMojo, "replaceValue", replaceValue);
+    setFieldValue(findAndReplaceMojo, "processFileContents", true);
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+    setFieldValue(findAndReplaceMojo, "replaceAll", true);
+    setFieldValue(findAndReplaceMojo, "incremental", true);
+
+    findAndReplaceMojo.execute();
+
+    assertTrue(Files.exists(Paths.get(runningTestsPath.toString(), "target", "find-and-replace", "default.index")));
+
+    // Same size and modification time, so the second execution must not read it again
+    FileTime textLastModified = Files.getLastModifiedTime(textTestFile);
+    String textContents = new String(Files.readAllBytes(textTestFile), StandardCharsets.UTF_8);
+    Files.write(textTestFile, textContents.replaceFirst("done", "asdf").getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(textTestFile, textLastModified);
+
+    // A changed size must be processed again
+    Files.write(xmlTestFile, "<xml>asdf</xml>\n".getBytes(StandardCharsets.UTF_8));
+
+    FindAndReplaceMojo secondMojo = new FindAndReplaceMojo();
+    setFieldValue(secondMojo, "baseDir", runningTestsPath.toString());
+    setFieldValue(secondMojo, "findRegex", "asdf");
+    setFieldValue(secondMojo, "replaceValue", replaceValue);
+    setFieldValue(secondMojo, "processFileContents", true);
+    setFieldValue(secondMojo, "replacementType", "file-contents");
+    setFieldValue(secondMojo, "replaceAll", true);
+    setFieldValue(secondMojo, "incremental", true);
+
+    secondMojo.execute();
+
+    assertTrue(fileContains(textTestFile.toFile(), "asdf"));
+    assertFalse(fileContains(xmlTestFile.toFile(), "asdf"));
+    assertTrue(fileContains(xmlTestFile.toFile(), replaceValue));
+
+  }
+
+  @Test
+  public void testReplacements() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    Path txtFile = Files.write(Paths.get(runningTestsPath.toString(), "rules-asdf.txt"),
+            "asdf qwer asdf\n".getBytes(StandardCharsets.UTF_8));
+    Path xmlFile = Files.write(Paths.get(runningTestsPath.toString(), "rules-asdf.xml"),
+            "asdf qwer asdf\n".getBytes(StandardCharsets.UTF_8));
+
+    Replacement qwer = new Replacement();
+    setFieldValue(qwer, "findRegex", "qwer");
+    setFieldValue(qwer, "replaceValue", "zxcv");
+    setFieldValue(qwer, "fileMask", ".xml");
+
+    Replacement firstAsdf = new Replacement();
+    setFieldValue(firstAsdf, "findRegex", "asdf");
+    setFieldValue(firstAsdf, "replaceValue", "hjkl");
+    setFieldValue(firstAsdf, "replaceAll", false);
+
+    setFieldValue(findAndReplaceMojo, "replacements", Arrays.asList(qwer, firstAsdf));
+    setFieldValue(findAndReplaceMojo, "processFileContents", true);
+    setFieldValue(findAndReplaceMojo, "processFilenames", true);
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents,filenames");
+    setFieldValue(findAndReplaceMojo, "encoding", "UTF-8");
+    setFieldValue(findAndReplaceMojo, "replaceAll", true);
+
+    findAndReplaceMojo.execute();
+
+    Path expectedTxtFile = Paths.get(runningTestsPath.toString(), "rules-hjkl.txt");
+    Path expectedXmlFile = Paths.get(runningTestsPath.toString(), "rules-hjkl.xml");
+
+    assertFalse(Files.exists(txtFile));
+    assertFalse(Files.exists(xmlFile));
+    assertEquals("hjkl qwer asdf\n", new String(Files.readAllBytes(expectedTxtFile), StandardCharsets.UTF_8));
+    assertEquals("hjkl zxcv asdf\n", new String(Files.readAllBytes(expectedXmlFile), StandardCharsets.UTF_8));
+
+  }
+
+  @Test(expected = MojoExecutionException.class)
+  public void testNoFindRegexOrReplacements() throws NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    setFieldValue(findAndReplaceMojo, "processFileContents", true);
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+
+    findAndReplaceMojo.execute();
+
+  }
+
+  @Test
+  public void testLiteral() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    Path literalFile = Files.write(Paths.get(runningTestsPath.toString(), "literal-1.0.0.txt"),
+            "version 1.0.0 of a.b.c\nx.y and 1.0.0.1\r\n".getBytes(StandardCharsets.UTF_8));
+
+    Replacement packageName = new Replacement();
+    setFieldValue(packageName, "findRegex", "a.b.c");
+    setFieldValue(packageName, "replaceValue", "$1.x.y");
+
+    Replacement movedPackageName = new Replacement();
+    setFieldValue(movedPackageName, "findRegex", "x.y");
+    setFieldValue(movedPackageName, "replaceValue", "z");
+
+    setFieldValue(findAndReplaceMojo, "findRegex", "1.0.0");
+    setFieldValue(findAndReplaceMojo, "replaceValue", "2.0.0");
+    setFieldValue(findAndReplaceMojo, "replacements", Arrays.asList(packageName, movedPackageName));
+    setFieldValue(findAndReplaceMojo, "literal", true);
+    setFieldValue(findAndReplaceMojo, "processFileContents", true);
+    setFieldValue(findAndReplaceMojo, "processFilenames", true);
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents,filenames");
+    setFieldValue(findAndReplaceMojo, "encoding", "UTF-8");
+    setFieldValue(findAndReplaceMojo, "replaceAll", true);
+
+    findAndReplaceMojo.execute();
+
+    Path expectedFile = Paths.get(runningTestsPath.toString(), "literal-2.0.0.txt");
+
+    assertFalse(Files.exists(literalFile));
+    // Every literal is matched against the original contents, so the replaced $1.x.y is not matched again
+    assertEquals("version 2.0.0 of $1.x.y\nz and 2.0.0.1\n",
+            new String(Files.readAllBytes(expectedFile), StandardCharsets.UTF_8));
+
+  }
+
+  @Test
+  public void testDryRun() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    Path dryRunDir = Files.createDirectory(Paths.get(runningTestsPath.toString(), "dry-run"));
+    Path dir = Files.createDirectory(Paths.get(dryRunDir.toString(), "asdf-dir"));
+    Path dryRunFile = Files.write(Paths.get(dir.toString(), "asdf.txt"),
+            "asdf asdf\nqwer\r\nasdf".getBytes(StandardCharsets.UTF_8));
+    FileTime lastModified = Files.getLastModifiedTime(dryRunFile);
+
+    setFieldValue(findAndReplaceMojo, "findRegex", "asdf");
+    setFieldValue(findAndReplaceMojo, "replaceValue", "replaced");
+    setFieldValue(findAndReplaceMojo, "processFileContents", true);
+    setFieldValue(findAndReplaceMojo, "processFilenames", true);
+    setFieldValue(findAndReplaceMojo, "processDirectoryNames", true);
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents,filenames,directory-names");
+    setFieldValue(findAndReplaceMojo, "encoding", "UTF-8");
+    setFieldValue(findAndReplaceMojo, "replaceAll", true);
+    setFieldValue(findAndReplaceMojo, "dryRun", true);
+    setFieldValue(findAndReplaceMojo, "recursive", true);
+    setFieldValue(findAndReplaceMojo, "baseDir", dryRunDir.toString());
+
+    findAndReplaceMojo.execute();
+
+    assertEquals("asdf asdf\nqwer\r\nasdf", new String(Files.readAllBytes(dryRunFile), StandardCharsets.UTF_8));
+    assertEquals(lastModified, Files.getLastModifiedTime(dryRunFile));
+    try (Stream<Path> files = Files.list(dir)) {
+      assertEquals(1, files.count());
+    }
+
+    Path report = Paths.get(dryRunDir.toString(), "target", "find-and-replace", "default-dry-run.json");
+    String json = new String(Files.readAllBytes(report), StandardCharsets.UTF_8);
+    assertTrue(json.contains("\"matched\": 2,"));
+    assertTrue(json.contains("\"matches\": 5,"));
+    assertTrue(json.contains("{\"path\": \"asdf-dir\", \"name\": [1]}"));
+    assertTrue(json.contains("{\"path\": \"asdf-dir/asdf.txt\", \"contents\": [3], \"name\": [1]}"));
+
+  }
+
+  @Test
+  public void testDryRunChainedRules() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    Path dryRunDir = Files.createDirectory(Paths.get(runningTestsPath.toString(), "dry-run-chained"));
+    Path dryRunFile = Files.write(Paths.get(dryRunDir.toString(), "asdf.txt"),
+            "asdf qwer\nasdf\n".getBytes(StandardCharsets.UTF_8));
+
+    Replacement asdf = new Replacement();
+    setFieldValue(asdf, "findRegex", "asdf");
+    setFieldValue(asdf, "replaceValue", "qwer");
+
+    Replacement qwer = new Replacement();
+    setFieldValue(qwer, "findRegex", "qwer");
+    setFieldValue(qwer, "replaceValue", "zxcv");
+
+    setFieldValue(findAndReplaceMojo, "replacements", Arrays.asList(asdf, qwer));
+    setFieldValue(findAndReplaceMojo, "processFileContents", true);
+    setFieldValue(findAndReplaceMojo, "processFilenames", true);
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents,filenames");
+    setFieldValue(findAndReplaceMojo, "encoding", "UTF-8");
+    setFieldValue(findAndReplaceMojo, "replaceAll", true);
+    setFieldValue(findAndReplaceMojo, "dryRun", true);
+    setFieldValue(findAndReplaceMojo, "baseDir", dryRunDir.toString());
+
+    findAndReplaceMojo.execute();
+
+    // The second rule also counts the matches the first one replaced, as a real run replaces them
+    Path report = Paths.get(dryRunDir.toString(), "target", "find-and-replace", "default-dry-run.json");
+    String json = new String(Files.readAllBytes(report), StandardCharsets.UTF_8);
+    assertTrue(json.contains("{\"path\": \"asdf.txt\", \"contents\": [2, 3], \"name\": [1, 1]}"));
+
+    FindAndReplaceMojo secondMojo = new FindAndReplaceMojo();
+    setFieldValue(secondMojo, "replacements", Arrays.asList(asdf, qwer));
+    setFieldValue(secondMojo, "processFileContents", true);
+    setFieldValue(secondMojo, "processFilenames", true);
+    setFieldValue(secondMojo, "replacementType", "file-contents,filenames");
+    setFieldValue(secondMojo, "encoding", "UTF-8");
+    setFieldValue(secondMojo, "replaceAll", true);
+    setFieldValue(secondMojo, "baseDir", dryRunDir.toString());
+
+    secondMojo.execute();
+
+    assertEquals("zxcv zxcv\nzxcv\n", new String(Files.readAllBytes(Paths.get(dryRunDir.toString(), "zxcv.txt")),
+            StandardCharsets.UTF_8));
+    assertFalse(Files.exists(dryRunFile));
+
+  }
+
+  @Test
+  public void testMetricsFile() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    Path metricsDir = Files.createDirectory(Paths.get(runningTestsPath.toString(), "metrics"));
+    Files.write(Paths.get(metricsDir.toString(), "asdf.txt"), "asdf asdf\nqwer\n".getBytes(StandardCharsets.UTF_8));
+    Files.write(Paths.get(metricsDir.toString(), "qwer.txt"), "qwer\n".getBytes(StandardCharsets.UTF_8));
+    Files.write(Paths.get(metricsDir.toString(), "asdf.xml"), "asdf\n".getBytes(StandardCharsets.UTF_8));
+
+    setFieldValue(findAndReplaceMojo, "baseDir", metricsDir.toString());
+    setFieldValue(findAndReplaceMojo, "findRegex", "asdf");
+    setFieldValue(findAndReplaceMojo, "replaceValue", "zxcv");
+    setFieldValue(findAndReplaceMojo, "processFileContents", true);
+    setFieldValue(findAndReplaceMojo, "processFilenames", true);
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents,filenames");
+    setFieldValue(findAndReplaceMojo, "fileMask", ".txt");
+    setFieldValue(findAndReplaceMojo, "replaceAll", true);
+    setFieldValue(findAndReplaceMojo, "metricsFile", "target/metrics.json");
+
+    findAndReplaceMojo.execute();
+
+    String json = new String(Files.readAllBytes(Paths.get(metricsDir.toString(), "target", "metrics.json")),
+            StandardCharsets.UTF_8);
+    assertTrue(json.contains("\"filesVisited\": 3,"));
+    assertTrue(json.contains("\"filesFiltered\": 1,"));
+    assertTrue(json.contains("\"filesProcessed\": 2,"));
+    assertTrue(json.contains("\"bytesRead\": 20,"));
+    assertTrue(json.contains("\"matches\": 2,"));
+    assertTrue(json.contains("\"renames\": 1,"));
+
+  }
+
+  @Test
+  public void testPatternsSharedAcrossExecutions() throws NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    FindAndReplaceMojo otherMojo = new FindAndReplaceMojo();
+
+    for (FindAndReplaceMojo mojo : Arrays.asList(findAndReplaceMojo, otherMojo)) {
+      setFieldValue(mojo, "baseDir", runningTestsPath.toString());
+      setFieldValue(mojo, "findRegex", "shared-(find)");
+      setFieldValue(mojo, "replaceValue", "$1");
+      setFieldValue(mojo, "exclusions", "shared-exclusion");
+      setFieldValue(mojo, "processFilenames", true);
+      setFieldValue(mojo, "replacementType", "filenames");
+      mojo.execute();
+    }
+
+    List<?> rules = (List<?>) getFieldValue(findAndReplaceMojo, "rules");
+    List<?> otherRules = (List<?>) getFieldValue(otherMojo, "rules");
+    assertSame(((ReplacementRule) rules.get(0)).getFindRegex(), ((ReplacementRule) otherRules.get(0)).getFindRegex());
+    assertSame(((List<?>) getFieldValue(findAndReplaceMojo, "exclusionsList")).get(0),
+            ((List<?>) getFieldValue(otherMojo, "exclusionsList")).get(0));
+
+  }
+
+  @Test
+  public void testIncludesAndExcludes() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    Path globsDir = Files.createDirectory(Paths.get(runningTestsPath.toString(), "globs"));
+    Path srcDir = Files.createDirectory(Paths.get(globsDir.toString(), "src"));
+    Path genDir = Files.createDirectory(Paths.get(srcDir.toString(), "gen"));
+    Path included = Files.write(Paths.get(srcDir.toString(), "asdf.txt"), "asdf\n".getBytes(StandardCharsets.UTF_8));
+    Path includedXml = Files.write(Paths.get(globsDir.toString(), "asdf.xml"),
+            "asdf\n".getBytes(StandardCharsets.UTF_8));
+    Path notIncluded = Files.write(Paths.get(globsDir.toString(), "asdf.txt"),
+            "asdf\n".getBytes(StandardCharsets.UTF_8));
+    Path excluded = Files.write(Paths.get(genDir.toString(), "asdf.txt"), "asdf\n".getBytes(StandardCharsets.UTF_8));
+
+    setFieldValue(findAndReplaceMojo, "baseDir", globsDir.toString());
+    setFieldValue(findAndReplaceMojo, "findRegex", "asdf");
+    setFieldValue(findAndReplaceMojo, "replaceValue", "zxcv");
+    setFieldValue(findAndReplaceMojo, "processFileContents", true);
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+    setFieldValue(findAndReplaceMojo, "replaceAll", true);
+    setFieldValue(findAndReplaceMojo, "recursive", true);
+    setFieldValue(findAndReplaceMojo, "includes", Arrays.asList("src/**/*.txt", "**/*.xml"));
+    setFieldValue(findAndReplaceMojo, "excludes", Collections.singletonList("**/gen/"));
+
+    findAndReplaceMojo.execute();
+
+    assertEquals("zxcv\n", new String(Files.readAllBytes(included), StandardCharsets.UTF_8));
+    assertEquals("zxcv\n", new String(Files.readAllBytes(includedXml), StandardCharsets.UTF_8));
+    assertEquals("asdf\n", new String(Files.readAllBytes(notIncluded), StandardCharsets.UTF_8));
+    assertEquals("asdf\n", new String(Files.readAllBytes(excluded), StandardCharsets.UTF_8));
+
+  }
+
+  @Test
+  public void testFileContentsAtomicReplace() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    Path atomicDir = Files.createDirectory(Paths.get(runningTestsPath.toString(), "atomic"));
+    Path script = Files.write(Paths.get(atomicDir.toString(), "asdf.sh"),
+            "echo asdf\n".getBytes(StandardCharsets.UTF_8));
+    Path orphan = Files.write(Paths.get(atomicDir.toString(), ".find-and-replace-1.tmp"),
+            "asdf\n".getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(orphan, FileTime.fromMillis(System.currentTimeMillis() - 3600000));
+    Path running = Files.write(Paths.get(atomicDir.toString(), ".find-and-replace-2.tmp"),
+            "asdf\n".getBytes(StandardCharsets.UTF_8));
+
+    boolean posix = Files.getFileStore(script).supportsFileAttributeView(PosixFileAttributeView.class);
+    Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rwxr-x---");
+    if (posix) {
+      Files.setPosixFilePermissions(script, permissions);
+    }
+
+    setFieldValue(findAndReplaceMojo, "baseDir", atomicDir.toString());
+    setFieldValue(findAndReplaceMojo, "findRegex", "asdf");
+    setFieldValue(findAndReplaceMojo, "replaceValue", "zxcv");
+    setFieldValue(findAndReplaceMojo, "processFileContents", true);
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+    setFieldValue(findAndReplaceMojo, "replaceAll", true);
+
+    findAndReplaceMojo.execute();
+
+    assertEquals("echo zxcv\n", new String(Files.readAllBytes(script), StandardCharsets.UTF_8));
+    if (posix) {
+      assertEquals(permissions, Files.getPosixFilePermissions(script));
+    }
+    assertFalse(Files.exists(orphan));
+    assertEquals("asdf\n", new String(Files.readAllBytes(running), StandardCharsets.UTF_8));
+    try (Stream<Path> files = Files.list(atomicDir)) {
+      assertEquals(2, files.count());
+    }
+
+  }
+
+  @Test
+  public void testBinaryHandlingSkip() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    Path binaryDir = Files.createDirectory(Paths.get(runningTestsPath.toString(), "binary"));
+    byte[] binary = {'a', 's', 'd', 'f', 0, (byte) 0xff, '\n', 'a', 's', 'd', 'f'};
+    Path binaryFile = Files.write(Paths.get(binaryDir.toString(), "asdf.bin"), binary);
+    Path textFile = Files.write(Paths.get(binaryDir.toString(), "asdf.txt"),
+            "asdf\n".getBytes(StandardCharsets.UTF_8));
+
+    setFieldValue(findAndReplaceMojo, "baseDir", binaryDir.toString());
+    setFieldValue(findAndReplaceMojo, "findRegex", "asdf");
+    setFieldValue(findAndReplaceMojo, "replaceValue", "zxcv");
+    setFieldValue(findAndReplaceMojo, "processFileContents", true);
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+    setFieldValue(findAndReplaceMojo, "encoding", "UTF-8");
+    setFieldValue(findAndReplaceMojo, "replaceAll", true);
+
+    findAndReplaceMojo.execute();
+
+    assertTrue(Arrays.equals(binary, Files.readAllBytes(binaryFile)));
+    assertEquals("zxcv\n", new String(Files.readAllBytes(textFile), StandardCharsets.UTF_8));
+
+  }
+
+  @Test
+  public void testBinaryHandlingSkipLogged() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    Path binaryDir = Files.createDirectory(Paths.get(runningTestsPath.toString(), "binary"));
+    byte[] binary = {'a', 's', 'd', 'f', 0, '\n'};
+    Path binaryFile = Files.write(Paths.get(binaryDir.toString(), "asdf.bin"), binary);
+    // A Latin-1 file read as UTF-8, its é is no valid UTF-8 sequence
+    byte[] latin1 = "café asdf\n".getBytes(StandardCharsets.ISO_8859_1);
+    Path latin1File = Files.write(Paths.get(binaryDir.toString(), "latin1.txt"), latin1);
+
+    List<String> infos = Collections.synchronizedList(new ArrayList<>());
+    List<String> warnings = Collections.synchronizedList(new ArrayList<>());
+    List<String> debugs = Collections.synchronizedList(new ArrayList<>());
+    findAndReplaceMojo.setLog(new SystemStreamLog() {
+      @Override
+      public void info(CharSequence content) {
+        infos.add(content.toString());
+      }
+
+      @Override
+      public void warn(CharSequence content) {
+        warnings.add(content.toString());
+      }
+
+      @Override
+      public boolean isDebugEnabled() {
+        return true;
+      }
+
+      @Override
+      public void debug(CharSequence content) {
+        debugs.add(content.toString());
+      }
+    });
+
+    setFieldValue(findAndReplaceMojo, "baseDir", binaryDir.toString());
+    setFieldValue(findAndReplaceMojo, "findRegex", "asdf");
+    setFieldValue(findAndReplaceMojo, "replaceValue", "zxcv");
+    setFieldValue(findAndReplaceMojo, "processFileContents", true);
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+    setFieldValue(findAndReplaceMojo, "encoding", "UTF-8");
+    setFieldValue(findAndReplaceMojo, "replaceAll", true);
+
+    findAndReplaceMojo.execute();
+
+    // Neither file is rewritten, the é is not replaced by U+FFFD
+    assertTrue(Arrays.equals(binary, Files.readAllBytes(binaryFile)));
+    assertTrue(Arrays.equals(latin1, Files.readAllBytes(latin1File)));
+    assertTrue(debugs.contains("Skipping binary file " + binaryFile));
+    assertTrue(warnings.toString(), warnings.stream().anyMatch(warning -> warning.startsWith("Skipping " + latin1File
+            + ", its first bytes are not valid UTF-8.")));
+    assertTrue(infos.contains("Skipped 2 binary file(s), run with -X to list them."));
+
+  }
+
+  @Test
+  public void testBinaryHandlingByteLevelReplace() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    Path binaryDir = Files.createDirectory(Paths.get(runningTestsPath.toString(), "binary"));
+    byte[] binary = {'a', 's', 'd', 'f', 0, (byte) 0xff, '\r', 'a', 's', 'd', 'f', (byte) 0xc3, (byte) 0xa9};
+    Path binaryFile = Files.write(Paths.get(binaryDir.toString(), "asdf.bin"), binary);
+
+    setFieldValue(findAndReplaceMojo, "baseDir", binaryDir.toString());
+    setFieldValue(findAndReplaceMojo, "findRegex", "asdf(é)?");
+    setFieldValue(findAndReplaceMojo, "replaceValue", "ü");
+    setFieldValue(findAndReplaceMojo, "processFileContents", true);
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+    setFieldValue(findAndReplaceMojo, "encoding", "UTF-8");
+    setFieldValue(findAndReplaceMojo, "replaceAll", true);
+    setFieldValue(findAndReplaceMojo, "binaryHandling", "byte-level-replace");
+
+    findAndReplaceMojo.execute();
+
+    byte[] expected = {(byte) 0xc3, (byte) 0xbc, 0, (byte) 0xff, '\r', (byte) 0xc3, (byte) 0xbc};
+    assertTrue(Arrays.equals(expected, Files.readAllBytes(binaryFile)));
+
+  }
+
+  @Test(expected = MojoFailureException.class)
+  public void testBinaryHandlingFail() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    Path binaryDir = Files.createDirectory(Paths.get(runningTestsPath.toString(), "binary"));
+    Files.write(Paths.get(binaryDir.toString(), "asdf.bin"), new byte[] {'a', 's', 'd', 'f', 0});
+
+    setFieldValue(findAndReplaceMojo, "baseDir", binaryDir.toString());
+    setFieldValue(findAndReplaceMojo, "findRegex", "asdf");
+    setFieldValue(findAndReplaceMojo, "replaceValue", "zxcv");
+    setFieldValue(findAndReplaceMojo, "processFileContents", true);
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+    setFieldValue(findAndReplaceMojo, "binaryHandling", "fail");
+
+    findAndReplaceMojo.execute();
+
+  }
+
+  @Test
+  public void testLiteralByteLevel() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    Path literalFile = Files.write(Paths.get(runningTestsPath.toString(), "literal.txt"),
+            "naïve café\r\nnaïve déjà vu".getBytes(StandardCharsets.UTF_8));
+
+    Replacement accent = new Replacement();
+    setFieldValue(accent, "findRegex", "é");
+    setFieldValue(accent, "replaceValue", "ée");
+    setFieldValue(accent, "replaceAll", false);
+
+    setFieldValue(findAndReplaceMojo, "findRegex", "ï");
+    setFieldValue(findAndReplaceMojo, "replaceValue", "i");
+    setFieldValue(findAndReplaceMojo, "replacements", Collections.singletonList(accent));
+    setFieldValue(findAndReplaceMojo, "literal", true);
+    setFieldValue(findAndReplaceMojo, "processFileContents", true);
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+    setFieldValue(findAndReplaceMojo, "encoding", "UTF-8");
+    setFieldValue(findAndReplaceMojo, "matchScope", "file");
+    setFieldValue(findAndReplaceMojo, "replaceAll", true);
+
+    findAndReplaceMojo.execute();
+
+    assertEquals("naive cafée\r\nnaive déjà vu", new String(Files.readAllBytes(literalFile), StandardCharsets.UTF_8));
+
+  }
+
+  @Test
+  public void testFileContentsLongLineBufferedReader() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    StringBuilder contents = new StringBuilder();
+    for (int i = 0; i < 50000; i++) {
+      contents.append("asdf ");
+    }
+    Path longFile = Files.write(Paths.get(runningTestsPath.toString(), "long.txt"),
+            contents.toString().getBytes(StandardCharsets.UTF_8));
+
+    setFieldValue(findAndReplaceMojo, "findRegex", "asdf");
+    setFieldValue(findAndReplaceMojo, "replaceValue", "replaced");
+    setFieldValue(findAndReplaceMojo, "processFileContents", true);
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+    setFieldValue(findAndReplaceMojo, "encoding", "UTF-8");
+    setFieldValue(findAndReplaceMojo, "replaceAll", true);
+    setFieldValue(findAndReplaceMojo, "contentsReader", "buffered");
+
+    findAndReplaceMojo.execute();
+
+    assertEquals(contents.toString().replace("asdf", "replaced") + "\n",
+            new String(Files.readAllBytes(longFile), StandardCharsets.UTF_8));
+
+  }
+
+  @Test
+  public void testFileContentsPipeline() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    Path pipelineDir = Files.createDirectories(Paths.get(runningTestsPath.toString(), "pipeline"));
+    for (int i = 0; i < 20; i++) {
+      Files.write(Paths.get(pipelineDir.toString(), "asdf-" + i + ".txt"),
+              ("one asdf\ntwo asdf " + i + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+    Path unmatchedFile = Files.write(Paths.get(pipelineDir.toString(), "unmatched.txt"),
+            "nothing here\n".getBytes(StandardCharsets.UTF_8));
+    long unmatchedModified = Files.getLastModifiedTime(unmatchedFile).toMillis() - 10000;
+    Files.setLastModifiedTime(unmatchedFile, FileTime.fromMillis(unmatchedModified));
+
+    setFieldValue(findAndReplaceMojo, "baseDir", pipelineDir.toString());
+    setFieldValue(findAndReplaceMojo, "findRegex", "asdf");
+    setFieldValue(findAndReplaceMojo, "replaceValue", "zxcv");
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents,filenames");
+    setFieldValue(findAndReplaceMojo, "replaceAll", true);
+    setFieldValue(findAndReplaceMojo, "skipUnmatchedFiles", true);
+    setFieldValue(findAndReplaceMojo, "threads", "2");
+    setFieldValue(findAndReplaceMojo, "pipeline", true);
+    setFieldValue(findAndReplaceMojo, "pipelineQueueSize", 1);
+
+    findAndReplaceMojo.execute();
+
+    for (int i = 0; i < 20; i++) {
+      assertFalse(Files.exists(Paths.get(pipelineDir.toString(), "asdf-" + i + ".txt")));
+      assertEquals("one zxcv\ntwo zxcv " + i + "\n", new String(
+              Files.readAllBytes(Paths.get(pipelineDir.toString(), "zxcv-" + i + ".txt")), StandardCharsets.UTF_8));
+    }
+    assertEquals(unmatchedModified, Files.getLastModifiedTime(unmatchedFile).toMillis());
+
+    try (Stream<Path> files = Files.list(pipelineDir)) {
+      assertEquals(21, files.count());
+    }
+
+  }
+
+  @Test
+  public void testFileContentsVirtualExecutor() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    setFieldValue(findAndReplaceMojo, "findRegex", "asdf");
+    String replaceValue = "value successfully replaced";
+    setFieldValue(findAndReplaceMojo, "replaceValue", replaceValue);
+    setFieldValue(findAndReplaceMojo, "processFileContents", true);
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+    setFieldValue(findAndReplaceMojo, "replaceAll", true);
+    setFieldValue(findAndReplaceMojo, "threads", "2");
+    // Falls back to platform threads before Java 21
+    setFieldValue(findAndReplaceMojo, "executor", "virtual");
+
+    findAndReplaceMojo.execute();
+
+    assertTrue(fileContains(textTestFile.toFile(), replaceValue));
+    assertTrue(fileContains(xmlTestFile.toFile(), replaceValue));
+    assertTrue(fileContains(ymlTestFile.toFile(), replaceValue));
+
+    assertFalse(fileContains(textTestFile.toFile(), "asdf"));
+    assertFalse(fileContains(xmlTestFile.toFile(), "asdf"));
+    assertFalse(fileContains(ymlTestFile.toFile(), "asdf"));
+
+  }
+
+  @Test(expected = MojoExecutionException.class)
+  public void testInvalidExecutor() throws NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    setFieldValue(findAndReplaceMojo, "findRegex", "asdf");
+    setFieldValue(findAndReplaceMojo, "replaceValue", "");
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+    setFieldValue(findAndReplaceMojo, "executor", "green");
+
+    findAndReplaceMojo.execute();
+
+  }
+
+  @Test
+  public void testFileContentsLiteralPrefilter() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    Path prefilterDir = Files.createDirectories(Paths.get(runningTestsPath.toString(), "prefilter"));
+    Path matchedFile = Files.write(Paths.get(prefilterDir.toString(), "matched.txt"),
+            "import com.acme.legacy.Foo;\nint legacy = 1;\nimport com.acme.legacy.Bar;\n".getBytes(StandardCharsets.UTF_8));
+    Path unmatchedFile = Files.write(Paths.get(prefilterDir.toString(), "unmatched.txt"),
+            "import com.acme.Baz;\n".getBytes(StandardCharsets.UTF_8));
+    long unmatchedModified = Files.getLastModifiedTime(unmatchedFile).toMillis() - 10000;
+    Files.setLastModifiedTime(unmatchedFile, FileTime.fromMillis(unmatchedModified));
+
+    setFieldValue(findAndReplaceMojo, "baseDir", prefilterDir.toString());
+    setFieldValue(findAndReplaceMojo, "findRegex", "com\\.acme\\.legacy\\.(\\w+)");
+    setFieldValue(findAndReplaceMojo, "replaceValue", "org.acme.$1");
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+    setFieldValue(findAndReplaceMojo, "replaceAll", true);
+    setFieldValue(findAndReplaceMojo, "skipUnmatchedFiles", true);
+
+    findAndReplaceMojo.execute();
+
+    assertEquals("import org.acme.Foo;\nint legacy = 1;\nimport org.acme.Bar;\n",
+            new String(Files.readAllBytes(matchedFile), StandardCharsets.UTF_8));
+    assertEquals(unmatchedModified, Files.getLastModifiedTime(unmatchedFile).toMillis());
+
+  }
+
+  @Test
+  public void testFileContentsReplaceValueCaseTransforms() throws IOException, NoSuchFieldException,
+          IllegalAccessException, MojoExecutionException, MojoFailureException {
+
+    Path templateDir = Files.createDirectories(Paths.get(runningTestsPath.toString(), "template"));
+    Path templateFile = Files.write(Paths.get(templateDir.toString(), "template.txt"),
+            "set_name = user_id\nset_type = été\n".getBytes(StandardCharsets.UTF_8));
+
+    setFieldValue(findAndReplaceMojo, "baseDir", templateDir.toString());
+    setFieldValue(findAndReplaceMojo, "findRegex", "(\\w+)_(?<field>\\w+) = (\\S+)");
+    setFieldValue(findAndReplaceMojo, "replaceValue", "$1${field:capitalize} = ${3:upper} \\$${1:lower}");
+    setFieldValue(findAndReplaceMojo, "encoding", "UTF-8");
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+    setFieldValue(findAndReplaceMojo, "replaceAll", true);
+
+    findAndReplaceMojo.execute();
+
+    assertEquals("setName = USER_ID $set\nsetType = ÉTÉ $set\n",
+            new String(Files.readAllBytes(templateFile), StandardCharsets.UTF_8));
+
+  }
+
+  @Test(expected = MojoExecutionException.class)
+  public void testInvalidReplaceValueGroup() throws NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    setFieldValue(findAndReplaceMojo, "findRegex", "(asdf)");
+    setFieldValue(findAndReplaceMojo, "replaceValue", "${2:upper}");
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+
+    findAndReplaceMojo.execute();
+
+  }
+
+  @Test
+  public void testFileContentsChangedSince() throws IOException, InterruptedException, NoSuchFieldException,
+          IllegalAccessException, MojoExecutionException, MojoFailureException {
+
+    Path repositoryDir = Files.createDirectories(Paths.get(runningTestsPath.toString(), "changed"));
+    Path unchangedFile = Files.write(Files.createDirectories(repositoryDir.resolve("unchanged")).resolve("a.txt"),
+            "asdf\n".getBytes(StandardCharsets.UTF_8));
+    Path modifiedFile = Files.write(repositoryDir.resolve("modified.txt"), "asdf\n".getBytes(StandardCharsets.UTF_8));
+    git(repositoryDir, "init", "-q");
+    git(repositoryDir, "add", ".");
+    git(repositoryDir, "-c", "user.name=test", "-c", "user.email=test@example.com", "-c", "commit.gpgsign=false",
+            "commit", "-q", "-m", "initial");
+    Files.write(modifiedFile, "asdf asdf\n".getBytes(StandardCharsets.UTF_8));
+    Path untrackedFile = Files.write(Files.createDirectories(repositoryDir.resolve("untracked")).resolve("b.txt"),
+            "asdf\n".getBytes(StandardCharsets.UTF_8));
+
+    setFieldValue(findAndReplaceMojo, "baseDir", repositoryDir.toString());
+    setFieldValue(findAndReplaceMojo, "recursive", true);
+    setFieldValue(findAndReplaceMojo, "findRegex", "asdf");
+    setFieldValue(findAndReplaceMojo, "replaceValue", "zxcv");
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+    setFieldValue(findAndReplaceMojo, "replaceAll", true);
+    setFieldValue(findAndReplaceMojo, "changedSince", "HEAD");
+
+    findAndReplaceMojo.execute();
+
+    assertEquals("asdf\n", new String(Files.readAllBytes(unchangedFile), StandardCharsets.UTF_8));
+    assertEquals("zxcv zxcv\n", new String(Files.readAllBytes(modifiedFile), StandardCharsets.UTF_8));
+    assertEquals("zxcv\n", new String(Files.readAllBytes(untrackedFile), StandardCharsets.UTF_8));
+
+  }
+
+  @Test(expected = MojoExecutionException.class)
+  public void testInvalidChangedSince() throws IOException, InterruptedException, NoSuchFieldException,
+          IllegalAccessException, MojoExecutionException, MojoFailureException {
+
+    Path repositoryDir = Files.createDirectories(Paths.get(runningTestsPath.toString(), "changed"));
+    git(repositoryDir, "init", "-q");
+
+    setFieldValue(findAndReplaceMojo, "baseDir", repositoryDir.toString());
+    setFieldValue(findAndReplaceMojo, "findRegex", "asdf");
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+    setFieldValue(findAndReplaceMojo, "changedSince", "no-such-ref");
+
+    findAndReplaceMojo.execute();
+
+  }
+
+  private void git(Path directory, String... args) throws IOException, InterruptedException {
+    List<String> command = new ArrayList<>(Arrays.asList(args));
+    command.add(0, "git");
+    Process process = new ProcessBuilder(command).directory(directory.toFile()).inheritIO().start();
+    assertEquals(0, process.waitFor());
+  }
+
+  @Test
+  public void testRespectIgnoreFiles() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    Path repositoryDir = Files.createDirectories(Paths.get(runningTestsPath.toString(), "ignored"));
+    Files.createDirectories(repositoryDir.resolve(".git").resolve("info"));
+    Files.write(repositoryDir.resolve(".git").resolve("info").resolve("exclude"), "excluded.txt\n".getBytes());
+    Files.write(repositoryDir.resolve(".gitignore"), "# build output\nbuild/\n*.log\n!keep.log\n".getBytes());
+    Path moduleDir = Files.createDirectories(repositoryDir.resolve("module"));
+    Files.write(moduleDir.resolve(".ignore"), "/local.txt\n".getBytes());
+
+    List<Path> ignoredFiles = Arrays.asList(repositoryDir.resolve(".git").resolve("config"),
+            repositoryDir.resolve("excluded.txt"),
+            Files.createDirectories(repositoryDir.resolve("build")).resolve("a.txt"),
+            Files.createDirectories(moduleDir.resolve("build")).resolve("b.txt"), repositoryDir.resolve("out.log"),
+            moduleDir.resolve("local.txt"));
+    List<Path> processedFiles = Arrays.asList(repositoryDir.resolve("keep.log"), repositoryDir.resolve("local.txt"),
+            moduleDir.resolve("c.txt"), Files.createDirectories(moduleDir.resolve("src")).resolve("build"));
+    for (Path file : ignoredFiles) {
+      Files.write(file, "asdf\n".getBytes());
+    }
+    for (Path file : processedFiles) {
+      Files.write(file, "asdf\n".getBytes());
+    }
+
+    setFieldValue(findAndReplaceMojo, "baseDir", repositoryDir.toString());
+    setFieldValue(findAndReplaceMojo, "recursive", true);
+    setFieldValue(findAndReplaceMojo, "findRegex", "asdf");
+    setFieldValue(findAndReplaceMojo, "replaceValue", "zxcv");
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+    setFieldValue(findAndReplaceMojo, "replaceAll", true);
+    setFieldValue(findAndReplaceMojo, "respectIgnoreFiles", true);
+
+    findAndReplaceMojo.execute();
+
+    for (Path file : ignoredFiles) {
+      assertEquals(file.toString(), "asdf\n", new String(Files.readAllBytes(file)));
+    }
+    for (Path file : processedFiles) {
+      assertEquals(file.toString(), "zxcv\n", new String(Files.readAllBytes(file)));
+    }
+
+  }
+
+  @Test
+  public void testFileContentsSkipUnmatchedFilesBufferedReader() throws IOException, NoSuchFieldException,
+          IllegalAccessException, MojoExecutionException, MojoFailureException {
+
+    StringBuilder longLine = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      longLine.append("qwer ");
+    }
+    Path unmatchedFile = Files.write(Paths.get(runningTestsPath.toString(), "unmatched.txt"),
+            (longLine + "\r\nno match here").getBytes(StandardCharsets.UTF_8));
+    FileTime lastModified = FileTime.fromMillis(1000000000000L);
+    Files.setLastModifiedTime(unmatchedFile, lastModified);
+    Path lateMatchFile = Files.write(Paths.get(runningTestsPath.toString(), "late-match.txt"),
+            (longLine + "\nlast asdf").getBytes(StandardCharsets.UTF_8));
+
+    setFieldValue(findAndReplaceMojo, "findRegex", "asdf");
+    setFieldValue(findAndReplaceMojo, "replaceValue", "zxcv");
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+    setFieldValue(findAndReplaceMojo, "replaceAll", true);
+    setFieldValue(findAndReplaceMojo, "contentsReader", "buffered");
+    setFieldValue(findAndReplaceMojo, "skipUnmatchedFiles", true);
+
+    findAndReplaceMojo.execute();
+
+    assertEquals(longLine + "\r\nno match here", new String(Files.readAllBytes(unmatchedFile), StandardCharsets.UTF_8));
+    assertEquals(lastModified, Files.getLastModifiedTime(unmatchedFile));
+    assertEquals(longLine + "\nlast zxcv\n", new String(Files.readAllBytes(lateMatchFile), StandardCharsets.UTF_8));
+
+  }
+
+  @Test
+  public void testIncrementalIndexNotProcessed() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    for (int execution = 0; execution < 2; execution++) {
+      FindAndReplaceMojo mojo = new FindAndReplaceMojo();
+      setFieldValue(mojo, "baseDir", runningTestsPath.toString());
+      setFieldValue(mojo, "recursive", true);
+      setFieldValue(mojo, "findRegex", "index");
+      setFieldValue(mojo, "replaceValue", "idx");
+      setFieldValue(mojo, "replacementType", "file-contents,filenames");
+      setFieldValue(mojo, "replaceAll", true);
+      setFieldValue(mojo, "incremental", true);
+      mojo.execute();
+    }
+
+    try (Stream<Path> files = Files.list(Paths.get(runningTestsPath.toString(), "target", "find-and-replace"))) {
+      assertEquals(Collections.singletonList("default.index"),
+              files.map(file -> file.getFileName().toString()).collect(Collectors.toList()));
+    }
+
+  }
+
+  @Test
+  public void testDryRunReportNotProcessed() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    setFieldValue(findAndReplaceMojo, "findRegex", "asdf");
+    setFieldValue(findAndReplaceMojo, "replaceValue", "zxcv");
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+    setFieldValue(findAndReplaceMojo, "replaceAll", true);
+    setFieldValue(findAndReplaceMojo, "recursive", true);
+    setFieldValue(findAndReplaceMojo, "dryRun", true);
+
+    findAndReplaceMojo.execute();
+
+    Path report = Paths.get(runningTestsPath.toString(), "target", "find-and-replace", "default-dry-run.json");
+    String json = new String(Files.readAllBytes(report), StandardCharsets.UTF_8);
+
+    FindAndReplaceMojo secondMojo = new FindAndReplaceMojo();
+    setFieldValue(secondMojo, "baseDir", runningTestsPath.toString());
+    setFieldValue(secondMojo, "findRegex", "\"path\"");
+    setFieldValue(secondMojo, "replaceValue", "\"replaced\"");
+    setFieldValue(secondMojo, "replacementType", "file-contents");
+    setFieldValue(secondMojo, "replaceAll", true);
+    setFieldValue(secondMojo, "recursive", true);
+
+    secondMojo.execute();
+
+    assertEquals(json, new String(Files.readAllBytes(report), StandardCharsets.UTF_8));
+
+  }
+
+  @Test
+  public void testMetricsFileNotProcessed() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    for (FindAndReplaceMojo mojo : Arrays.asList(findAndReplaceMojo, new FindAndReplaceMojo())) {
+      setFieldValue(mojo, "baseDir", runningTestsPath.toString());
+      setFieldValue(mojo, "findRegex", "filesVisited");
+      setFieldValue(mojo, "replaceValue", "visited");
+      setFieldValue(mojo, "replacementType", "file-contents");
+      setFieldValue(mojo, "replaceAll", true);
+      setFieldValue(mojo, "metricsFile", "metrics.json");
+      mojo.execute();
+    }
+
+    String json = new String(Files.readAllBytes(Paths.get(runningTestsPath.toString(), "metrics.json")),
+            StandardCharsets.UTF_8);
+    // The second execution never saw the metrics of the first one
+    assertTrue(json.contains("\"matches\": 0,"));
+
+  }
+
+  @Test
+  public void testTempFileDiscardedOnFailure() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    Path failureDir = Files.createDirectory(Paths.get(runningTestsPath.toString(), "failure"));
+    StringBuilder contents = new StringBuilder("start ");
+    for (int i = 0; i < 200000; i++) {
+      contents.append("ab");
+    }
+    Path file = Files.write(Paths.get(failureDir.toString(), "deep.txt"),
+            contents.toString().getBytes(StandardCharsets.UTF_8));
+
+    setFieldValue(findAndReplaceMojo, "baseDir", failureDir.toString());
+    // The alternation recurses once per repetition, overflowing the stack halfway through the replaced contents
+    setFieldValue(findAndReplaceMojo, "findRegex", "(?:ab|ba)+");
+    setFieldValue(findAndReplaceMojo, "replaceValue", "x");
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+    setFieldValue(findAndReplaceMojo, "matchScope", "file");
+
+    boolean failed = false;
+    try {
+      findAndReplaceMojo.execute();
+    } catch (StackOverflowError e) {
+      failed = true;
+    }
+    assertTrue(failed);
+
+    try (Stream<Path> files = Files.list(failureDir)) {
+      assertEquals(Collections.singletonList(file), files.collect(Collectors.toList()));
+    }
+    assertEquals(contents.toString(), new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+
+  }
+
+  @Test
+  public void testFileContentsSkipUnmatchedFilesByteLevel() throws IOException, NoSuchFieldException,
+          IllegalAccessException, MojoExecutionException, MojoFailureException {
+
+    StringBuilder longLine = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      longLine.append("qwer ");
+    }
+    Path unmatchedFile = Files.write(Paths.get(runningTestsPath.toString(), "unmatched.txt"),
+            (longLine + "\r\nno match here").getBytes(StandardCharsets.UTF_8));
+    FileTime lastModified = FileTime.fromMillis(1000000000000L);
+    Files.setLastModifiedTime(unmatchedFile, lastModified);
+    Path lateMatchFile = Files.write(Paths.get(runningTestsPath.toString(), "late-match.txt"),
+            (longLine + "\r\nlast asdf").getBytes(StandardCharsets.UTF_8));
+
+    setFieldValue(findAndReplaceMojo, "findRegex", "asdf");
+    setFieldValue(findAndReplaceMojo, "replaceValue", "zxcv");
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+    setFieldValue(findAndReplaceMojo, "replaceAll", true);
+    setFieldValue(findAndReplaceMojo, "literal", true);
+    setFieldValue(findAndReplaceMojo, "contentsReader", "nio");
+    setFieldValue(findAndReplaceMojo, "skipUnmatchedFiles", true);
+
+    findAndReplaceMojo.execute();
+
+    assertEquals(longLine + "\r\nno match here", new String(Files.readAllBytes(unmatchedFile), StandardCharsets.UTF_8));
+    assertEquals(lastModified, Files.getLastModifiedTime(unmatchedFile));
+    assertEquals(longLine + "\nlast zxcv\n", new String(Files.readAllBytes(lateMatchFile), StandardCharsets.UTF_8));
+
+  }
+
+  @Test
+  public void testNoStateLeaksBetweenFiles() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    StringBuilder longLine = new StringBuilder();
+    for (int i = 0; i < 100000; i++) {
+      longLine.append('x');
+    }
+    // The long file ends mid-line on a partial match, which must not carry over into the next file
+    byte[] longContents = (longLine + "asd").getBytes(StandardCharsets.UTF_8);
+    byte[] shortContents = "f asdf\nx\n".getBytes(StandardCharsets.UTF_8);
+
+    String[][] setups = {{"buffered", "line", "false"}, {"nio", "streaming-window", "false"},
+        {"nio", "streaming-window", "true"}};
+    for (String[] setup : setups) {
+      Path setupDir = Files.createDirectory(Paths.get(runningTestsPath.toString(), String.join("-", setup)));
+      Path longFile = Files.write(Paths.get(setupDir.toString(), "a-long.txt"), longContents);
+      Path shortFile = Files.write(Paths.get(setupDir.toString(), "b-short.txt"), shortContents);
+
+      FindAndReplaceMojo mojo = new FindAndReplaceMojo();
+      setFieldValue(mojo, "baseDir", setupDir.toString());
+      setFieldValue(mojo, "findRegex", "asdf");
+      setFieldValue(mojo, "replaceValue", "zxcv");
+      setFieldValue(mojo, "replacementType", "file-contents");
+      setFieldValue(mojo, "replaceAll", true);
+      setFieldValue(mojo, "threads", "1");
+      setFieldValue(mojo, "contentsReader", setup[0]);
+      setFieldValue(mojo, "matchScope", setup[1]);
+      setFieldValue(mojo, "literal", Boolean.parseBoolean(setup[2]));
+      setFieldValue(mojo, "preserveLineEndings", true);
+
+      mojo.execute();
+
+      assertTrue(Arrays.equals(longContents, Files.readAllBytes(longFile)));
+      assertEquals("f zxcv\nx\n", new String(Files.readAllBytes(shortFile), StandardCharsets.UTF_8));
+    }
+
+  }
+
+  @Test(expected = MojoExecutionException.class)
+  public void testReplaceValueEscapedNamedGroup() throws NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    // The escaped parenthesis makes (?<g> literal text rather than a group
+    setFieldValue(findAndReplaceMojo, "findRegex", "a\\(?<g>b");
+    setFieldValue(findAndReplaceMojo, "replaceValue", "${g}");
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+
+    findAndReplaceMojo.execute();
+
+  }
+
+  @Test
+  public void testContentsReadersIdenticalOutput() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    String[] contents = {
+        "asdf qwer\nasdf\n", "asdf qwer\nasdf", "asdf\r\nqwer\r\n", "asdf\r\nqwer", "asdf\rqwer\r", "asdf\rqwer",
+        "asdf\nqwer\r\nasdf\rqwer", "\n\r\n\r\nasdf\r\r\n", "\uFEFFasdf\nqwer\n", "\uFEFFasdf\r\nqwer", "\uFEFF", ""};
+
+    for (String matchScope : new String[] {"line", "file"}) {
+      for (boolean preserveLineEndings : new boolean[] {false, true}) {
+        for (int i = 0; i < contents.length; i++) {
+
+          byte[][] outputs = new byte[2][];
+          String[] contentsReaders = {"nio", "buffered"};
+          for (int reader = 0; reader < contentsReaders.length; reader++) {
+            Path dir = Files.createDirectory(Paths.get(runningTestsPath.toString(),
+                    String.join("-", "readers", matchScope, String.valueOf(preserveLineEndings), String.valueOf(i),
+                            contentsReaders[reader])));
+            Path file = Files.write(Paths.get(dir.toString(), "asdf.txt"),
+                    contents[i].getBytes(StandardCharsets.UTF_8));
+
+            FindAndReplaceMojo mojo = new FindAndReplaceMojo();
+            setFieldValue(mojo, "baseDir", dir.toString());
+            setFieldValue(mojo, "findRegex", "asdf");
+            setFieldValue(mojo, "replaceValue", "zxcv");
+            setFieldValue(mojo, "replacementType", "file-contents");
+            setFieldValue(mojo, "replaceAll", true);
+            setFieldValue(mojo, "encoding", "UTF-8");
+            setFieldValue(mojo, "matchScope", matchScope);
+            setFieldValue(mojo, "preserveLineEndings", preserveLineEndings);
+            setFieldValue(mojo, "contentsReader", contentsReaders[reader]);
+
+            mojo.execute();
+
+            outputs[reader] = Files.readAllBytes(file);
+          }
+
+          assertEquals(matchScope + " " + preserveLineEndings + " " + i,
+                  new String(outputs[1], StandardCharsets.UTF_8), new String(outputs[0], StandardCharsets.UTF_8));
+          assertTrue(Arrays.equals(outputs[1], outputs[0]));
+
+        }
+      }
+    }
+
+  }
+
+  @Test
+  public void testMaxInMemorySizeSharedByThreads() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    StringBuilder small = new StringBuilder();
+    while (small.length() < 1500) {
+      small.append("asdf qwer\n");
+    }
+    StringBuilder large = new StringBuilder();
+    while (large.length() < 6000) {
+      large.append("asdf qwer\n");
+    }
+
+    for (String matchScope : new String[] {"line", "file"}) {
+
+      Path dir = Files.createDirectory(Paths.get(runningTestsPath.toString(), "in-memory-" + matchScope));
+      for (int i = 0; i < 24; i++) {
+        Files.write(Paths.get(dir.toString(), "small" + i + ".txt"), small.toString().getBytes(StandardCharsets.UTF_8));
+      }
+      Files.write(Paths.get(dir.toString(), "large.txt"), large.toString().getBytes(StandardCharsets.UTF_8));
+
+      FindAndReplaceMojo mojo = new FindAndReplaceMojo();
+      setFieldValue(mojo, "baseDir", dir.toString());
+      setFieldValue(mojo, "findRegex", "asdf");
+      setFieldValue(mojo, "replaceValue", "zxcv");
+      setFieldValue(mojo, "replacementType", "file-contents");
+      setFieldValue(mojo, "replaceAll", true);
+      setFieldValue(mojo, "matchScope", matchScope);
+      setFieldValue(mojo, "threads", "4");
+      // Room for two small files at once, the large file never fits
+      setFieldValue(mojo, "maxInMemorySize", 4096L);
+      setFieldValue(mojo, "metricsFile", "../in-memory-" + matchScope + ".json");
+
+      mojo.execute();
+
+      for (int i = 0; i < 24; i++) {
+        assertEquals(small.toString().replace("asdf", "zxcv"), new String(
+                Files.readAllBytes(Paths.get(dir.toString(), "small" + i + ".txt")), StandardCharsets.UTF_8));
+      }
+      assertEquals(large.toString().replace("asdf", "zxcv"),
+              new String(Files.readAllBytes(Paths.get(dir.toString(), "large.txt")), StandardCharsets.UTF_8));
+
+      String json = new String(Files.readAllBytes(Paths.get(runningTestsPath.toString(),
+              "in-memory-" + matchScope + ".json")), StandardCharsets.UTF_8);
+      String peak = json.substring(json.indexOf("\"inMemoryPeak\": ") + "\"inMemoryPeak\": ".length());
+      long inMemoryPeak = Long.parseLong(peak.substring(0, peak.indexOf('\n')));
+      assertTrue(matchScope + " " + inMemoryPeak, inMemoryPeak >= small.length() && inMemoryPeak <= 4096);
+
+    }
+
+  }
+
+  @Test(expected = MojoExecutionException.class)
+  public void testInvalidMaxInMemorySize() throws NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    setFieldValue(findAndReplaceMojo, "findRegex", "asdf");
+    setFieldValue(findAndReplaceMojo, "replaceValue", "zxcv");
+    setFieldValue(findAndReplaceMojo, "replacementType", "file-contents");
+    setFieldValue(findAndReplaceMojo, "maxInMemorySize", 0L);
+
+    findAndReplaceMojo.execute();
+
+  }
+
+  @Test
+  public void testLineLoopAllocation() throws IOException, NoSuchFieldException, IllegalAccessException,
+          MojoExecutionException, MojoFailureException {
+
+    Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+
+    // Each line is "line n asdf qwer\n", 17 chars
+    long addedChars = 20000 * 17;
+
+    for (String contentsReader : new String[] {"nio", "buffered"}) {
+      // The first run loads the classes, which allocates as well
+      allocatedReplacing(contentsReader, 1000, "warmup-" + contentsReader);
+      long allocated = allocatedReplacing(contentsReader, 20000, "lines-" + contentsReader);
+      long allocatedTwice = allocatedReplacing(contentsReader, 40000, "twice-" + contentsReader);
+
+      // Lines allocate less than a byte each, beyond the 2 bytes per char of the file nio decodes whole
+      long fileBuffer = contentsReader.equals("nio") ? 2 * addedChars : 0;
+      assertTrue(contentsReader + " " + allocated + " " + allocatedTwice,
+              allocatedTwice - allocated - fileBuffer < 20000);
+    }
+
+  }
+
+  /**
+   * @return the bytes allocated by this thread replacing a file of the given number of lines, one match in each
+   */
+  private long allocatedReplacing(String contentsReader, int lines, String dirName) throws IOException,
+          NoSuchFieldException, IllegalAccessException, MojoExecutionException, MojoFailureException {
+
+    Path dir = Files.createDirectory(Paths.get(runningTestsPath.toString(), dirName));
+    StringBuilder contents = new StringBuilder();
+    for (int i = 0; i < lines; i++) {
+      contents.append("line ").append(i % 10).append(" asdf qwer\n");
+    }
+    Files.write(Paths.get(dir.toString(), "lines.txt"), contents.toString().getBytes(StandardCharsets.UTF_8));
+
+    FindAndReplaceMojo mojo = new FindAndReplaceMojo();
+    setFieldValue(mojo, "baseDir", dir.toString());
+    setFieldValue(mojo, "findRegex", "asdf");
+    setFieldValue(mojo, "replaceValue", "zxcv");
+    setFieldValue(mojo, "replacementType", "file-contents");
+    setFieldValue(mojo, "replaceAll", true);
+    setFieldValue(mojo, "encoding", "UTF-8");
+    setFieldValue(mojo, "executor", "sequential");
+    setFieldValue(mojo, "contentsReader", contentsReader);
+
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    mojo.execute();
+    return threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+
+  }
+
+  private void setFieldValue(Object obj, String fieldName, Object val)
+          throws NoSuchFieldException, IllegalAccessException {
+    Field field = obj.getClass().getDeclaredField(fieldName);
+    field.setAccessible(true);
+    field.set(obj, val);
+  }
+
+  private Object getFieldValue(Object obj, String fieldName) throws NoSuchFieldException, IllegalAccessException {
+    Field field = obj.getClass().getDeclaredField(fieldName);
+    field.setAccessible(true);
+    return field.get(obj);
   }
 
   private void recursiveDelete(Path pathToBeDeleted) throws IOException {